@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of request URIs by {@link HttpClientWrapper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildUriBenchmark {
+    private URI baseUrl;
+    private Path dataversePath;
+    private Path versionsPath;
+    private Map<String, String> persistentIdParameters;
+
+    @Setup
+    public void setUp() {
+        baseUrl = URI.create("https://dataverse.example.org/");
+        dataversePath = Paths.get("api/dataverses/").resolve("root/").resolve("contents");
+        versionsPath = Paths.get("api/datasets/").resolve(":persistentId/").resolve("versions/");
+        persistentIdParameters = new HashMap<>();
+        persistentIdParameters.put("persistentId", "doi:10.5072/FK2/U6AEZM");
+    }
+
+    @Benchmark
+    public URI withoutParameters() {
+        return HttpClientWrapper.buildURi(baseUrl, dataversePath, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public URI withPersistentIdParameter() {
+        return HttpClientWrapper.buildURi(baseUrl, versionsPath, persistentIdParameters);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the envelope of a `getVersion` response, from a String and from a stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataverseResponseBenchmark {
+
+    /**
+     * The number of authors, keywords and files in the dataset version.
+     */
+    @Param({ "10", "1000" })
+    public int size;
+
+    private ObjectMapper mapper;
+    private ObjectReader reader;
+    private String body;
+    private byte[] bodyBytes;
+
+    @Setup
+    public void setUp() {
+        PayloadGenerator generator = new PayloadGenerator();
+        mapper = DataverseClient.configureMapper(null);
+        reader = new EnvelopeReaders(mapper).get(List.class, DatasetVersion.class);
+        body = generator.toString(generator.envelope(generator.list(generator.datasetVersion(size))));
+        bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<DatasetVersion> parseFromString() throws IOException {
+        return new DataverseResponse<List<DatasetVersion>>(body, mapper, reader).getData();
+    }
+
+    @Benchmark
+    public List<DatasetVersion> parseFromStream() throws IOException {
+        return new DataverseResponse<List<DatasetVersion>>(new ByteArrayInputStream(bodyBytes), mapper, reader).getData();
+    }
+
+    @Benchmark
+    public Object parseAsJsonTree() throws IOException {
+        return new DataverseResponse<List<DatasetVersion>>(body, mapper, reader).getEnvelopeAsJson();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataverse.Dataverse;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete calls through {@link DataverseClient}, including connection handling and deserialization, against a {@link StubDataverseServer}. Run with
+ * `-t <threads>` to measure the client under concurrent load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    /**
+     * The number of files in the dataset version and of items in the dataverse.
+     */
+    @Param({ "10", "1000" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean streaming;
+
+    private StubDataverseServer server;
+    private DataverseClient client;
+    private DataverseClient cachingClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        PayloadGenerator generator = new PayloadGenerator();
+        server = new StubDataverseServer(8);
+        server.respond("/api/dataverses/root", generator.toString(generator.envelope(generator.dataverse())));
+        server.respond("/api/dataverses/root/contents", generator.toString(generator.envelope(generator.dataverseContents(size))));
+        server.respond("/api/datasets/:persistentId/versions", generator.toString(generator.envelope(generator.list(generator.datasetVersion(size)))));
+        server.respond("/api/datasets/:persistentId/versions/2.0", generator.toString(generator.envelope(generator.datasetVersion(size))));
+        DataverseClientConfig config = new DataverseClientConfig(server.getBaseUrl(), "benchmark-token");
+        config.setStreamingResponses(streaming);
+        client = new DataverseClient(config);
+        DataverseClientConfig cachingConfig = new DataverseClientConfig(server.getBaseUrl(), "benchmark-token");
+        cachingConfig.setDatasetVersionCache(new DatasetVersionCache(100_000_000));
+        cachingClient = new DataverseClient(cachingConfig);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        cachingClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Dataverse view() throws Exception {
+        return client.dataverse("root").view().getData();
+    }
+
+    @Benchmark
+    public List<DataverseItem> getContents() throws Exception {
+        return client.dataverse("root").getContents().getData();
+    }
+
+    @Benchmark
+    public List<DatasetVersion> listVersions() throws Exception {
+        return client.dataset("doi:10.5072/FK2/U6AEZM").listVersions().getData();
+    }
+
+    @Benchmark
+    public DatasetVersion getVersion() throws Exception {
+        return client.dataset("doi:10.5072/FK2/U6AEZM").getVersion("2.0").getData();
+    }
+
+    @Benchmark
+    public DatasetVersion getVersionCached() throws Exception {
+        return cachingClient.dataset("doi:10.5072/FK2/U6AEZM").getVersion("2.0").getData();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates synthetic Dataverse JSON payloads of a configurable size. The payloads follow the structure of real Dataverse responses closely enough to be
+ * deserialized by the model classes of the library.
+ */
+public class PayloadGenerator {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param size the number of authors, keywords and files
+     * @return a dataset version
+     */
+    public ObjectNode datasetVersion(int size) {
+        ObjectNode dsv = mapper.createObjectNode();
+        dsv.put("id", 7);
+        dsv.put("datasetId", 24);
+        dsv.put("datasetPersistentId", "doi:10.5072/FK2/U6AEZM");
+        dsv.put("storageIdentifier", "file://10.5072/FK2/U6AEZM");
+        dsv.put("versionNumber", 2);
+        dsv.put("versionMinorNumber", 0);
+        dsv.put("versionState", "RELEASED");
+        dsv.put("lastUpdateTime", "2021-10-02T12:22:05Z");
+        dsv.put("releaseTime", "2021-10-02T12:22:05Z");
+        dsv.put("createTime", "2021-10-02T12:20:00Z");
+        dsv.put("termsOfUse", "CC0 Waiver");
+        dsv.put("fileAccessRequest", false);
+        ObjectNode license = dsv.putObject("license");
+        license.put("label", "CC0");
+        license.put("uri", "http://creativecommons.org/publicdomain/zero/1.0");
+
+        ObjectNode citation = dsv.putObject("metadataBlocks").putObject("citation");
+        citation.put("displayName", "Citation Metadata");
+        citation.put("name", "citation");
+        ArrayNode fields = citation.putArray("fields");
+        fields.add(primitiveField("title", "Synthetic dataset with " + size + " files"));
+        fields.add(compoundField("author", size, "authorName", "authorAffiliation"));
+        fields.add(compoundField("keyword", size, "keywordValue", "keywordVocabulary"));
+        ObjectNode subject = fields.addObject();
+        subject.put("typeName", "subject");
+        subject.put("multiple", true);
+        subject.put("typeClass", "controlledVocabulary");
+        subject.putArray("value").add("Other");
+
+        ArrayNode files = dsv.putArray("files");
+        for (int i = 0; i < size; i++)
+            files.add(file(i));
+        return dsv;
+    }
+
+    /**
+     * @param typeName  the type name of the field
+     * @param size      the number of values
+     * @param subFields the type names of the subfields in each value
+     * @return a compound metadata field
+     */
+    public ObjectNode compoundField(String typeName, int size, String... subFields) {
+        ObjectNode field = mapper.createObjectNode();
+        field.put("typeName", typeName);
+        field.put("multiple", true);
+        field.put("typeClass", "compound");
+        ArrayNode values = field.putArray("value");
+        for (int i = 0; i < size; i++) {
+            ObjectNode value = values.addObject();
+            for (String subField : subFields)
+                value.set(subField, primitiveField(subField, subField + " " + i));
+        }
+        return field;
+    }
+
+    /**
+     * @param size the number of items; half of them are dataverses, the other half datasets
+     * @return the contents of a dataverse
+     */
+    public ArrayNode dataverseContents(int size) {
+        ArrayNode items = mapper.createArrayNode();
+        for (int i = 0; i < size; i++) {
+            ObjectNode item = items.addObject();
+            if (i % 2 == 0) {
+                item.put("type", "dataverse");
+                item.put("id", i);
+                item.put("title", "Dataverse " + i);
+            }
+            else {
+                item.put("type", "dataset");
+                item.put("id", i);
+                item.put("identifier", String.format("FK2/%06d", i));
+                item.put("persistentUrl", String.format("https://doi.org/10.5072/FK2/%06d", i));
+                item.put("protocol", "doi");
+                item.put("authority", "10.5072");
+                item.put("publisher", "Root");
+                item.put("publicationDate", "2021-10-02");
+                item.put("storageIdentifier", String.format("file://10.5072/FK2/%06d", i));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @return a dataverse, as returned by the view endpoint
+     */
+    public ObjectNode dataverse() {
+        ObjectNode dataverse = mapper.createObjectNode();
+        dataverse.put("id", 1);
+        dataverse.put("alias", "root");
+        dataverse.put("name", "Root");
+        dataverse.put("permissionRoot", true);
+        dataverse.put("description", "The root dataverse.");
+        dataverse.put("dataverseType", "UNCATEGORIZED");
+        dataverse.put("creationDate", "2021-10-02T12:22:05Z");
+        return dataverse;
+    }
+
+    /**
+     * @param data the payload of the envelope
+     * @return a Dataverse envelope with status OK around `data`
+     */
+    public ObjectNode envelope(JsonNode data) {
+        ObjectNode envelope = mapper.createObjectNode();
+        envelope.put("status", "OK");
+        envelope.set("data", data);
+        return envelope;
+    }
+
+    /**
+     * @param items the items
+     * @return a JSON array containing `items`
+     */
+    public ArrayNode list(JsonNode... items) {
+        ArrayNode list = mapper.createArrayNode();
+        for (JsonNode item : items)
+            list.add(item);
+        return list;
+    }
+
+    public String toString(JsonNode node) {
+        try {
+            return mapper.writeValueAsString(node);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ObjectNode primitiveField(String typeName, String value) {
+        ObjectNode field = mapper.createObjectNode();
+        field.put("typeName", typeName);
+        field.put("multiple", false);
+        field.put("typeClass", "primitive");
+        field.put("value", value);
+        return field;
+    }
+
+    private ObjectNode file(int i) {
+        ObjectNode file = mapper.createObjectNode();
+        file.put("label", String.format("file-%06d.txt", i));
+        file.put("directoryLabel", "data/" + (i % 10));
+        file.put("restricted", false);
+        file.put("version", 1);
+        file.put("datasetVersionId", 7);
+        ObjectNode dataFile = file.putObject("dataFile");
+        dataFile.put("id", 1000 + i);
+        dataFile.put("persistentId", "");
+        dataFile.put("filename", String.format("file-%06d.txt", i));
+        dataFile.put("contentType", "text/plain");
+        dataFile.put("filesize", 1024L * i);
+        dataFile.put("storageIdentifier", String.format("file://17c3f45d0e0-%012x", i));
+        dataFile.put("rootDataFileId", -1);
+        dataFile.put("md5", String.format("%032x", i));
+        ObjectNode checksum = dataFile.putObject("checksum");
+        checksum.put("type", "MD5");
+        checksum.put("value", String.format("%032x", i));
+        dataFile.put("creationDate", "2021-10-02");
+        return file;
+    }
+}
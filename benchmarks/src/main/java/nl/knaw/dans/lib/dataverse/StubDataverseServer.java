@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server that answers requests with canned bodies, so that end-to-end calls through the client can be measured without a real Dataverse.
+ */
+public class StubDataverseServer implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    public StubDataverseServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Registers the body to return for GET requests on `path`.
+     *
+     * @param path the path of the request, e.g. `/api/dataverses/root`
+     * @param body the body to return
+     */
+    public void respond(String path, String body) {
+        bodies.put(path, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public URI getBaseUrl() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = bodies.get(exchange.getRequestURI().getPath());
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (body == null) {
+            body = "{\"status\":\"ERROR\",\"message\":\"Not found\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(404, body.length);
+        }
+        else {
+            exchange.sendResponseHeaders(200, body.length);
+        }
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -21,15 +21,13 @@ import nl.knaw.dans.lib.dataverse.ExampleBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-
 public class DatasetGetVersion extends ExampleBase {
 
     private static final Logger log = LoggerFactory.getLogger(DatasetGetVersion.class);
 
     public static void main(String[] args) throws Exception {
-        DataverseResponse<List<DatasetVersion>> r = client.dataset(args[0]).getVersion(":latest");
-        log.info("Create Time: {}", r.getData().get(0).getCreateTime());
-        log.info("Version State: {}", r.getData().get(0).getVersionState());
+        DataverseResponse<DatasetVersion> r = client.dataset(args[0]).getVersion(":latest");
+        log.info("Create Time: {}", r.getData().getCreateTime());
+        log.info("Version State: {}", r.getData().getVersionState());
     }
 }
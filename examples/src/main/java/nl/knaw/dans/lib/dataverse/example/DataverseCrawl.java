@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.example;
+
+import nl.knaw.dans.lib.dataverse.DataverseCrawler;
+import nl.knaw.dans.lib.dataverse.ExampleBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DataverseCrawl extends ExampleBase {
+
+    private static final Logger log = LoggerFactory.getLogger(DataverseCrawl.class);
+
+    public static void main(String[] args) throws Exception {
+        DataverseCrawler crawler = new DataverseCrawler(client, "root", 4);
+        crawler.crawl(item -> log.info("id: {}, persistent URL: {}", item.getId(), item.getPersistentUrl()));
+        log.info("visited {} dataverses", crawler.getCheckpoint().getVisitedDataverses().size());
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.example;
+
+import nl.knaw.dans.lib.dataverse.ExampleBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+
+public class FileDownload extends ExampleBase {
+
+    private static final Logger log = LoggerFactory.getLogger(FileDownload.class);
+
+    public static void main(String[] args) throws Exception {
+        int fileId = Integer.parseInt(args[0]);
+        long n = client.file(fileId).downloadInParallelTo(Paths.get(args[1]), 4);
+        log.info("Downloaded {} bytes", n);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.jdk11;
+
+import org.apache.http.HttpEntity;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns an entity that can only write its content to an output stream, such as a multipart upload, into an input stream. The entity is written on a thread
+ * of the given executor, and at most a few blocks are buffered between the writer and the reader. The pipe uses no monitors, so neither side pins the
+ * carrier thread of a virtual thread while it waits.
+ */
+final class EntityPipe extends InputStream {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_BUFFERED_BLOCKS = 4;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(MAX_BUFFERED_BLOCKS);
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private byte[] block;
+    private int position;
+
+    private EntityPipe() {
+    }
+
+    /**
+     * @param entity   the entity to write
+     * @param executor the executor to write the entity on
+     * @return a stream with the content of the entity
+     */
+    static EntityPipe open(HttpEntity entity, Executor executor) {
+        EntityPipe pipe = new EntityPipe();
+        executor.execute(() -> pipe.write(entity));
+        return pipe;
+    }
+
+    private void write(HttpEntity entity) {
+        try (OutputStream out = new BufferedOutputStream(new BlockOutputStream(), BLOCK_SIZE)) {
+            entity.writeTo(out);
+        }
+        catch (IOException | RuntimeException e) {
+            if (!closed)
+                failure = e instanceof IOException ? (IOException) e : new IOException("Could not write request body", e);
+        }
+        try {
+            put(END);
+        }
+        catch (IOException e) {
+            // The reader is gone
+        }
+    }
+
+    private void put(byte[] b) throws IOException {
+        try {
+            while (!blocks.offer(b, 100, TimeUnit.MILLISECONDS)) {
+                if (closed)
+                    throw new IOException("Reader closed the pipe");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing request body");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (block != END && (block == null || position == block.length)) {
+            try {
+                block = blocks.take();
+                position = 0;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading request body");
+            }
+        }
+        if (block == END) {
+            if (failure != null)
+                throw failure;
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        blocks.clear();
+    }
+
+    private class BlockOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Reader closed the pipe");
+            if (len > 0)
+                put(Arrays.copyOfRange(b, off, off + len));
+        }
+    }
+}
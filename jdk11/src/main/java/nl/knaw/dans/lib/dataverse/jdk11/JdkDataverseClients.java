@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.jdk11;
+
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseClientConfig;
+
+import java.io.IOException;
+
+/**
+ * Creates {@link DataverseClient}s that send their requests with the `java.net.http.HttpClient` of the JDK, through a {@link JdkHttpClientAdapter}. Such a
+ * client can be used from virtual threads, e.g. one per dataset, without pinning their carrier threads while requests are in flight:
+ *
+ * <!-- @formatter:off -->
+ * ```java
+ * DataverseClient client = JdkDataverseClients.create(config);
+ * try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+ *     for (String pid : pids)
+ *         executor.submit(() -> process(client.dataset(pid).getVersion(":latest-published").getData()));
+ * }
+ * ```
+ * <!-- @formatter:on -->
+ *
+ * Retries, rate limiting, the circuit breaker, caching and metrics work as with the default client. The pool settings in the configuration are ignored,
+ * except for the maximum total number of connections, which limits the number of requests in flight; {@link DataverseClient#getPoolStats()} returns `null`.
+ */
+public final class JdkDataverseClients {
+
+    private JdkDataverseClients() {
+    }
+
+    /**
+     * @param config the configuration of the client
+     * @return a client backed by a new `java.net.http.HttpClient`, which is closed, together with its executor, when the client is closed
+     */
+    public static DataverseClient create(DataverseClientConfig config) {
+        return create(config, new JdkHttpClientAdapter(config));
+    }
+
+    static DataverseClient create(DataverseClientConfig config, JdkHttpClientAdapter adapter) {
+        return new AdapterClosingClient(config, adapter);
+    }
+
+    /**
+     * Client that closes its adapter, which the default {@link DataverseClient#close()} leaves open, as it does with every custom HttpClient.
+     */
+    private static class AdapterClosingClient extends DataverseClient {
+        private final JdkHttpClientAdapter adapter;
+
+        AdapterClosingClient(DataverseClientConfig config, JdkHttpClientAdapter adapter) {
+            super(config, adapter, null);
+            this.adapter = adapter;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                adapter.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.jdk11;
+
+import nl.knaw.dans.lib.dataverse.DataverseClientConfig;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adapter that lets a {@link nl.knaw.dans.lib.dataverse.DataverseClient} send its requests with a `java.net.http.HttpClient` instead of the Apache
+ * HttpClient, by passing it to {@link nl.knaw.dans.lib.dataverse.DataverseClient#DataverseClient(DataverseClientConfig, org.apache.http.client.HttpClient,
+ * com.fasterxml.jackson.databind.ObjectMapper)}. Only the Apache request and response classes are used; the connections are managed and the bytes are
+ * sent and received by the JDK client. A thread that waits for a response, a connection or a block of the request body parks instead of blocking in a
+ * monitor, so that many requests can be sent from virtual threads without pinning their carrier threads. See {@link JdkDataverseClients} for the usual
+ * way to create one.
+ *
+ * The JDK client does not limit the number of connections to a server, so the number of requests in flight is limited by the adapter itself. A request
+ * holds its permit until its response body has been read completely or closed.
+ *
+ * Request bodies that can only be written to a stream, such as file uploads, are written by a task on the body writer executor.
+ */
+public class JdkHttpClientAdapter extends CloseableHttpClient {
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final HttpClient httpClient;
+    private final Semaphore permits;
+    private final Executor bodyWriterExecutor;
+    private final ExecutorService ownedExecutor;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates an adapter around a new `java.net.http.HttpClient` that follows redirects, except from HTTPS to HTTP, and runs its tasks on virtual threads
+     * if the JVM supports them. The number of requests in flight is limited to {@link DataverseClientConfig#getMaxConnectionsTotal()}. The client and its
+     * executor are closed when the adapter is closed.
+     *
+     * @param config the configuration of the Dataverse client
+     */
+    public JdkHttpClientAdapter(DataverseClientConfig config) {
+        this(config, defaultExecutor());
+    }
+
+    /**
+     * Like {@link #JdkHttpClientAdapter(DataverseClientConfig)}, but with the given executor, which is shut down when the adapter is closed.
+     */
+    JdkHttpClientAdapter(DataverseClientConfig config, ExecutorService executor) {
+        this(HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).executor(executor).build(), config.getMaxConnectionsTotal(), executor,
+            executor);
+    }
+
+    /**
+     * @param httpClient            the client to send the requests with
+     * @param maxConcurrentRequests the maximum number of requests in flight
+     * @param bodyWriterExecutor    the executor for writing request bodies that can only be written to a stream
+     */
+    public JdkHttpClientAdapter(HttpClient httpClient, int maxConcurrentRequests, Executor bodyWriterExecutor) {
+        this(httpClient, maxConcurrentRequests, bodyWriterExecutor, null);
+    }
+
+    private JdkHttpClientAdapter(HttpClient httpClient, int maxConcurrentRequests, Executor bodyWriterExecutor, ExecutorService ownedExecutor) {
+        if (maxConcurrentRequests < 1)
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+        this.httpClient = httpClient;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.bodyWriterExecutor = bodyWriterExecutor;
+        this.ownedExecutor = ownedExecutor;
+    }
+
+    /**
+     * @return an executor that starts a virtual thread per task on JDK 21 and later, and a pool of daemon threads otherwise
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "dataverse-jdk-http-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the number of requests that can be started before the limit on requests in flight is reached
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+        List<EntityPipe> pipes = new CopyOnWriteArrayList<>();
+        java.net.http.HttpRequest jdkRequest = toJdkRequest(target, request, pipes);
+        Permit permit = acquire();
+        try {
+            java.net.http.HttpResponse<InputStream> response = httpClient.send(jdkRequest, BodyHandlers.ofInputStream());
+            return toApacheResponse(request.getRequestLine().getMethod(), response, permit);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit.release();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        }
+        catch (IOException | RuntimeException | Error e) {
+            permit.release();
+            throw e;
+        }
+        finally {
+            // Stops the writers of a body that the server did not read completely
+            pipes.forEach(EntityPipe::close);
+        }
+    }
+
+    private Permit acquire() throws InterruptedIOException {
+        try {
+            permits.acquire();
+            return new Permit();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a permit to send a request");
+        }
+    }
+
+    private java.net.http.HttpRequest toJdkRequest(HttpHost target, HttpRequest request, List<EntityPipe> pipes) {
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(uri(target, request))
+            .method(request.getRequestLine().getMethod(), bodyPublisher(entity, pipes));
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT)))
+                builder.header(header.getName(), header.getValue());
+        }
+        if (entity != null) {
+            if (!request.containsHeader(HttpHeaders.CONTENT_TYPE) && entity.getContentType() != null)
+                builder.header(HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+            if (!request.containsHeader(HttpHeaders.CONTENT_ENCODING) && entity.getContentEncoding() != null)
+                builder.header(HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+        }
+        return builder.build();
+    }
+
+    private static URI uri(HttpHost target, HttpRequest request) {
+        URI uri = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI() : URI.create(request.getRequestLine().getUri());
+        if (uri.isAbsolute() || target == null)
+            return uri;
+        return URI.create(target.toURI()).resolve(uri);
+    }
+
+    private BodyPublisher bodyPublisher(HttpEntity entity, List<EntityPipe> pipes) {
+        if (entity == null || entity.getContentLength() == 0)
+            return BodyPublishers.noBody();
+        BodyPublisher publisher = BodyPublishers.ofInputStream(() -> {
+            try {
+                return entity.getContent();
+            }
+            catch (UnsupportedOperationException e) {
+                EntityPipe pipe = EntityPipe.open(entity, bodyWriterExecutor);
+                pipes.add(pipe);
+                return pipe;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (entity.getContentLength() > 0)
+            return BodyPublishers.fromPublisher(publisher, entity.getContentLength());
+        return publisher;
+    }
+
+    private static CloseableHttpResponse toApacheResponse(String method, java.net.http.HttpResponse<InputStream> response, Permit permit)
+        throws IOException {
+        int status = response.statusCode();
+        ProtocolVersion version = response.version() == HttpClient.Version.HTTP_2 ? new ProtocolVersion("HTTP", 2, 0) : HttpVersion.HTTP_1_1;
+        Response result = new Response(new BasicStatusLine(version, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH)));
+        response.headers().map().forEach((name, values) -> {
+            // HTTP/2 pseudo-headers
+            if (!name.startsWith(":"))
+                values.forEach(value -> result.addHeader(name, value));
+        });
+        InputStream body = new ReleasingInputStream(response.body(), permit);
+        if ("HEAD".equals(method) || status < 200 || status == 204 || status == 304) {
+            body.close();
+            return result;
+        }
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(body);
+        entity.setContentLength(response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1));
+        response.headers().firstValue(HttpHeaders.CONTENT_TYPE).ifPresent(entity::setContentType);
+        response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).ifPresent(entity::setContentEncoding);
+        result.setEntity(entity);
+        return result;
+    }
+
+    /**
+     * Closes the `java.net.http.HttpClient` and shuts down its executor, if the adapter created them. A client and executor that were passed to the
+     * constructor are left open, as they may be shared.
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownedExecutor == null || !closed.compareAndSet(false, true))
+            return;
+        try {
+            // HttpClient is AutoCloseable from JDK 21 on; before that, its selector thread stops when the client is no longer referenced
+            if (httpClient instanceof AutoCloseable)
+                ((AutoCloseable) httpClient).close();
+        }
+        catch (IOException | RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IOException("Could not close HttpClient", e);
+        }
+        finally {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Not supported; the parameters of the JDK client are set on its builder.
+     */
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        throw new UnsupportedOperationException("HttpParams are not supported by the JDK HttpClient adapter");
+    }
+
+    /**
+     * Not supported; the connections are managed by the JDK client.
+     */
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        throw new UnsupportedOperationException("The JDK HttpClient adapter has no connection manager");
+    }
+
+    private class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true))
+                permits.release();
+        }
+    }
+
+    /**
+     * Releases the permit of the request when the end of the body is reached or the stream is closed, whichever comes first.
+     */
+    private static class ReleasingInputStream extends FilterInputStream {
+        private final Permit permit;
+
+        ReleasingInputStream(InputStream in, Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0)
+                permit.release();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0)
+                permit.release();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                permit.release();
+            }
+        }
+    }
+
+    private static class Response extends BasicHttpResponse implements CloseableHttpResponse {
+
+        Response(BasicStatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (getEntity() != null && getEntity().isStreaming())
+                getEntity().getContent().close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.jdk11;
+
+import com.sun.net.httpserver.HttpServer;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseClientConfig;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JdkHttpClientAdapterTest {
+    private static final String LOCKS = "{\"status\":\"OK\",\"data\":[{\"lockType\":\"Ingest\",\"user\":\"dataverseAdmin\"}]}";
+
+    private final Map<String, byte[]> received = new ConcurrentHashMap<>();
+    private final Map<String, String> receivedContentTypes = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+    private URI baseUrl;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            try (InputStream in = exchange.getRequestBody()) {
+                received.put(path, in.readAllBytes());
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null)
+                receivedContentTypes.put(path, contentType);
+            byte[] body;
+            int status = 200;
+            if (path.endsWith("/locks"))
+                body = LOCKS.getBytes(StandardCharsets.UTF_8);
+            else if (path.endsWith("/missing")) {
+                status = 404;
+                body = "{\"status\":\"ERROR\",\"message\":\"Not found\"}".getBytes(StandardCharsets.UTF_8);
+            }
+            else
+                body = ("{\"status\":\"OK\",\"data\":{\"message\":\"" + received.get(path).length + "\"}}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private JdkHttpClientAdapter adapter(int maxConcurrentRequests) {
+        return new JdkHttpClientAdapter(java.net.http.HttpClient.newHttpClient(), maxConcurrentRequests, executor);
+    }
+
+    @Test
+    public void dataverseClientWorksOverJdkClient() throws Exception {
+        try (DataverseClient client = JdkDataverseClients.create(new DataverseClientConfig(baseUrl, "token"))) {
+            assertEquals("Ingest", client.dataset("doi:10.5072/FK2/ABC").getLocks().getData().get(0).getLockType());
+            DataverseException e = assertThrows(DataverseException.class, () -> client.dataverse("missing").view());
+            assertEquals(404, e.getStatus());
+        }
+    }
+
+    @Test
+    public void stringBodyIsSentWithItsContentType() throws Exception {
+        HttpPost post = new HttpPost(baseUrl.resolve("api/post"));
+        post.setEntity(new StringEntity("{\"a\":1}", ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = adapter(2).execute(post)) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            EntityUtils.consume(response.getEntity());
+        }
+
+        assertEquals("{\"a\":1}", new String(received.get("/api/post"), StandardCharsets.UTF_8));
+        assertTrue(receivedContentTypes.get("/api/post").startsWith("application/json"));
+    }
+
+    @Test
+    public void bodyThatCanOnlyBeWrittenIsPiped() throws Exception {
+        byte[] content = new byte[1_000_000];
+        new Random(3).nextBytes(content);
+        HttpPost post = new HttpPost(baseUrl.resolve("api/upload"));
+        post.setEntity(new AbstractHttpEntity() {
+
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+
+            @Override
+            public long getContentLength() {
+                return content.length;
+            }
+
+            @Override
+            public InputStream getContent() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws java.io.IOException {
+                for (int i = 0; i < content.length; i += 10_000)
+                    out.write(content, i, 10_000);
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return false;
+            }
+        });
+
+        try (CloseableHttpResponse response = adapter(2).execute(post)) {
+            EntityUtils.consume(response.getEntity());
+        }
+
+        assertTrue(Arrays.equals(content, received.get("/api/upload")));
+    }
+
+    @Test
+    public void permitIsReleasedWhenBodyIsRead() throws Exception {
+        JdkHttpClientAdapter adapter = adapter(2);
+
+        try (CloseableHttpResponse response = adapter.execute(new HttpGet(baseUrl.resolve("api/datasets/1/locks")))) {
+            assertEquals(1, adapter.getAvailablePermits());
+            assertEquals(LOCKS, EntityUtils.toString(response.getEntity()));
+        }
+
+        assertEquals(2, adapter.getAvailablePermits());
+    }
+
+    @Test
+    public void permitIsReleasedWhenResponseIsClosedUnread() throws Exception {
+        JdkHttpClientAdapter adapter = adapter(1);
+
+        for (int i = 0; i < 3; i++)
+            adapter.execute(new HttpGet(baseUrl.resolve("api/datasets/1/locks"))).close();
+
+        assertEquals(1, adapter.getAvailablePermits());
+    }
+
+    @Test
+    public void closingCreatedClientShutsDownItsExecutor() throws Exception {
+        DataverseClientConfig config = new DataverseClientConfig(baseUrl, "token");
+        ExecutorService clientExecutor = Executors.newCachedThreadPool();
+        DataverseClient client = JdkDataverseClients.create(config, new JdkHttpClientAdapter(config, clientExecutor));
+        client.dataset("doi:10.5072/FK2/ABC").getLocks();
+
+        client.close();
+
+        assertTrue(clientExecutor.isShutdown());
+    }
+
+    @Test
+    public void closingAdapterLeavesExecutorOfCallerOpen() throws Exception {
+        adapter(1).close();
+
+        assertFalse(executor.isShutdown());
+    }
+}
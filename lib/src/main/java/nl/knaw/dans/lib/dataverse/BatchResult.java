@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+/**
+ * The outcome of the request for one dataset in a {@link DatasetBatch}.
+ *
+ * @param <D> the type of the data that was requested
+ */
+public class BatchResult<D> {
+    private final String persistentId;
+    private final D data;
+    private final Exception error;
+
+    BatchResult(String persistentId, D data, Exception error) {
+        this.persistentId = persistentId;
+        this.data = data;
+        this.error = error;
+    }
+
+    public String getPersistentId() {
+        return persistentId;
+    }
+
+    /**
+     * @return the data, or `null` if the request failed
+     */
+    public D getData() {
+        return data;
+    }
+
+    /**
+     * @return the reason the request failed, or `null` if it succeeded; usually an `IOException` or a `DataverseException`
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return persistentId + (error == null ? " OK" : " FAILED: " + error.getMessage());
+    }
+}
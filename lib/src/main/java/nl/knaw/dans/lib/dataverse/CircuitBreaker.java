@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Circuit breaker that stops sending requests to a Dataverse server that is failing, so that callers fail fast instead of each waiting for a timeout.
+ *
+ * The breaker starts out `CLOSED` and records the outcome of the last `slidingWindowSize` requests. A request fails if it gets an I/O error, or a `5xx` or
+ * `429` response; it is slow if it takes at least `slowCallDuration`. Once at least `minimumNumberOfCalls` have been recorded and the failure rate reaches
+ * `failureRateThreshold` or the slow-call rate reaches `slowCallRateThreshold`, the breaker goes to `OPEN`. While open, requests are not sent but fail with a
+ * {@link CircuitBreakerOpenException}. After `openDuration` the breaker goes to `HALF_OPEN` and lets `permittedCallsInHalfOpenState` probe requests through.
+ * If their failure and slow-call rates are below the thresholds, the breaker closes again; otherwise it opens again.
+ *
+ * The settings must be made before the breaker is used. The state can be queried with {@link #getState()} or followed with a {@link Listener}, e.g. to pause
+ * a job queue while the breaker is open. Clients configured with the same instance share its state.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 1.0;
+    public static final Duration DEFAULT_SLOW_CALL_DURATION = Duration.ofSeconds(10);
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 10;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+    public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Receives the state transitions of a circuit breaker. It is called on the thread of the request that caused the transition, so it should return
+     * quickly.
+     */
+    public interface Listener {
+        void stateChanged(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private Duration slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    private int slidingWindowSize = DEFAULT_SLIDING_WINDOW_SIZE;
+    private int minimumNumberOfCalls = DEFAULT_MINIMUM_NUMBER_OF_CALLS;
+    private Duration openDuration = DEFAULT_OPEN_DURATION;
+    private int permittedCallsInHalfOpenState = DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    // Outcomes in the sliding window: bit 0 is set for failed calls, bit 1 for slow calls
+    private byte[] window;
+    private int windowIndex;
+    private int calls;
+    private int failedCalls;
+    private int slowCalls;
+    private int halfOpenPermits;
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @param failureRateThreshold the fraction of failed calls, between 0 and 1, at which the breaker opens
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @param slowCallRateThreshold the fraction of slow calls, between 0 and 1, at which the breaker opens
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * @param slowCallDuration the duration from which a call counts as slow
+     */
+    public void setSlowCallDuration(Duration slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * @param slidingWindowSize the number of most recent calls of which the outcome is recorded
+     */
+    public void setSlidingWindowSize(int slidingWindowSize) {
+        if (slidingWindowSize < 1)
+            throw new IllegalArgumentException("slidingWindowSize must be at least 1");
+        this.slidingWindowSize = slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    /**
+     * @param minimumNumberOfCalls the number of calls that must have been recorded before the rates are evaluated
+     */
+    public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @param openDuration the time the breaker stays open before letting probe requests through
+     */
+    public void setOpenDuration(Duration openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * @param permittedCallsInHalfOpenState the number of probe requests let through in the half-open state
+     */
+    public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        if (permittedCallsInHalfOpenState < 1)
+            throw new IllegalArgumentException("permittedCallsInHalfOpenState must be at least 1");
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the current state. An open breaker reports `OPEN` until the next request is made after `openDuration` has passed.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Forces the breaker back to the closed state, discarding the recorded outcomes.
+     */
+    public void reset() {
+        State from;
+        synchronized (this) {
+            from = state;
+            transitionTo(State.CLOSED);
+        }
+        notifyListeners(from, State.CLOSED);
+    }
+
+    /**
+     * Gets permission to send a request. Every call that returns normally must be followed by exactly one call to {@link #onResult(boolean, long)}.
+     *
+     * @throws CircuitBreakerOpenException if the breaker is open, or half-open with all probe requests already in flight
+     */
+    void acquirePermission() throws CircuitBreakerOpenException {
+        synchronized (this) {
+            if (state == State.CLOSED)
+                return;
+            if (state == State.OPEN) {
+                long remaining = openedAt + openDuration.toNanos() - System.nanoTime();
+                if (remaining > 0)
+                    throw new CircuitBreakerOpenException(Duration.ofNanos(remaining));
+                transitionTo(State.HALF_OPEN);
+            }
+            else if (halfOpenPermits >= permittedCallsInHalfOpenState)
+                throw new CircuitBreakerOpenException(Duration.ZERO);
+            halfOpenPermits++;
+            if (halfOpenPermits > 1)
+                return;
+        }
+        // Only the first probe request after the open period gets here
+        notifyListeners(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * Records the outcome of a request for which permission was acquired.
+     *
+     * @param success       whether the request succeeded
+     * @param durationNanos the duration of the request
+     */
+    void onResult(boolean success, long durationNanos) {
+        boolean slow = durationNanos >= slowCallDuration.toNanos();
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.OPEN)
+                // Calls that were already in flight when the breaker opened
+                return;
+            record(success, slow);
+            if (state == State.HALF_OPEN) {
+                if (calls < permittedCallsInHalfOpenState)
+                    return;
+                to = isTripped() ? State.OPEN : State.CLOSED;
+            }
+            else {
+                if (calls < minimumNumberOfCalls || !isTripped())
+                    return;
+                to = State.OPEN;
+            }
+            transitionTo(to);
+        }
+        notifyListeners(from, to);
+    }
+
+    private void record(boolean success, boolean slow) {
+        if (window == null)
+            window = new byte[state == State.HALF_OPEN ? permittedCallsInHalfOpenState : slidingWindowSize];
+        if (calls == window.length) {
+            byte evicted = window[windowIndex];
+            failedCalls -= evicted & 1;
+            slowCalls -= (evicted >> 1) & 1;
+            calls--;
+        }
+        byte outcome = (byte) ((success ? 0 : 1) | (slow ? 2 : 0));
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        failedCalls += outcome & 1;
+        slowCalls += (outcome >> 1) & 1;
+        calls++;
+    }
+
+    private boolean isTripped() {
+        return failedCalls >= failureRateThreshold * calls || slowCalls >= slowCallRateThreshold * calls;
+    }
+
+    private void transitionTo(State newState) {
+        if (newState != state)
+            log.warn("Circuit breaker for Dataverse goes from {} to {} (failed calls: {}/{}, slow calls: {}/{})", state, newState, failedCalls, calls, slowCalls, calls);
+        state = newState;
+        openedAt = System.nanoTime();
+        window = null;
+        windowIndex = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        halfOpenPermits = 0;
+    }
+
+    private void notifyListeners(State from, State to) {
+        if (from == to)
+            return;
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(this, from, to);
+            }
+            catch (RuntimeException e) {
+                log.error("Circuit breaker listener failed", e);
+            }
+        }
+    }
+}
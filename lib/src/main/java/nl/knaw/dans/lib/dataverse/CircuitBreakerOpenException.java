@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+    private final Duration remainingOpenTime;
+
+    public CircuitBreakerOpenException(Duration remainingOpenTime) {
+        super("Circuit breaker is open; not sending request to Dataverse");
+        this.remainingOpenTime = remainingOpenTime;
+    }
+
+    /**
+     * @return the time after which the circuit breaker will let probe requests through again
+     */
+    public Duration getRemainingOpenTime() {
+        return remainingOpenTime;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiation and decoding of compressed response bodies, and compression of request bodies.
+ */
+final class Compression {
+    static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private Compression() {
+    }
+
+    /**
+     * Asks the server for a compressed response, unless the request already states which encodings it accepts. Requests for a byte range are left alone,
+     * as the range would apply to the compressed body.
+     */
+    static void acceptCompressedResponse(HttpRequest request) {
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING) && !request.containsHeader(HttpHeaders.RANGE))
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+    }
+
+    /**
+     * Replaces the entity of a compressed response by one that decompresses the body while it is read, and removes the headers that describe the compressed
+     * body. A response that was already decoded by the HttpClient itself no longer has a `Content-Encoding` header, and is left alone.
+     */
+    static void decodeResponse(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (entity == null || contentEncoding == null)
+            return;
+        String coding = contentEncoding.getValue().trim().toLowerCase(Locale.ROOT);
+        if ("gzip".equals(coding) || "x-gzip".equals(coding))
+            response.setEntity(new GzipDecompressingEntity(entity));
+        else if ("deflate".equals(coding))
+            response.setEntity(new DeflateDecompressingEntity(entity));
+        else
+            return;
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        response.removeHeaders(HttpHeaders.CONTENT_MD5);
+    }
+
+    /**
+     * Replaces the body of `request` by its gzip-compressed form, if it is at least `threshold` bytes long. The compressed body is kept in memory, so that the
+     * request stays repeatable and has a known length.
+     */
+    static void compressRequest(HttpEntityEnclosingRequest request, long threshold) throws IOException {
+        HttpEntity entity = request.getEntity();
+        if (entity == null || entity.getContentLength() < threshold || !entity.isRepeatable() || request.containsHeader(HttpHeaders.CONTENT_ENCODING))
+            return;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, entity.getContentLength() / 4));
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            entity.writeTo(out);
+        }
+        request.setEntity(new ByteArrayEntity(compressed.toByteArray(), ContentType.get(entity)));
+        request.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+}
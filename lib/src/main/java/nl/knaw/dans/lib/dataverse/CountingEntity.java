@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Entity wrapper that counts the bytes read from the content of the wrapped entity.
+ */
+class CountingEntity extends HttpEntityWrapper {
+    private volatile long byteCount;
+
+    CountingEntity(HttpEntity wrappedEntity) {
+        super(wrappedEntity);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ProxyInputStream(super.getContent()) {
+
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0)
+                    byteCount += n;
+            }
+        };
+    }
+
+    long getByteCount() {
+        return byteCount;
+    }
+}
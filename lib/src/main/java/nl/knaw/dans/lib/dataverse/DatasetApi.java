@@ -15,15 +15,24 @@
  */
 package nl.knaw.dans.lib.dataverse;
 
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetPublicationResult;
 import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileList;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class DatasetApi extends AbstractApi {
 
@@ -43,27 +52,150 @@ public class DatasetApi extends AbstractApi {
 
 
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#get-json-representation-of-a-dataset
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#list-versions-of-a-dataset
     /**
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#list-versions-of-a-dataset
+     *
+     * @return all versions of the dataset
+     */
+    public DataverseHttpResponse<List<DatasetVersion>> listVersions() throws IOException, DataverseException {
+        log.trace("ENTER");
+        Path versions = targetBase.resolve(isPersistentId ? persistendId : id).resolve("versions");
+        if (isPersistentId)
+            return httpClientWrapper.get(versions, persistentIdParameters(), List.class, DatasetVersion.class);
+        else
+            return httpClientWrapper.get(versions, List.class, DatasetVersion.class);
+    }
+
+    /**
+     * Returns one version of the dataset. If the client is configured with a {@link DatasetVersionCache}, a published version that is requested by number
+     * is returned from the cache if it is there, and every published version that is retrieved is stored in it. Versions from the cache are shared, so the
+     * returned version must not be modified.
+     *
      * See [Dataverse API Guide].
      *
      * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#get-version-of-a-dataset
      *
+     * @param version the version, e.g. `:latest`, `:latest-published`, `:draft` or `1.0`
+     * @return the version
      */
-    public DataverseResponse<List<DatasetVersion>> getVersion(String version) throws IOException, DataverseException {
-        return getVersionedFromTarget("", version, List.class, DatasetVersion.class);
+    public DataverseResponse<DatasetVersion> getVersion(String version) throws IOException, DataverseException {
+        log.trace("ENTER");
+        DatasetVersionCache cache = httpClientWrapper.getDatasetVersionCache();
+        if (cache == null)
+            return getVersionedFromTarget(version, DatasetVersion.class);
+        boolean byNumber = DatasetVersionCache.versionNumber(version) != null;
+        String endpoint = Endpoints.template(versionPath(version, ""));
+        DatasetVersion cached = cache.get(id, version, httpClientWrapper.getMapper());
+        if (cached != null) {
+            httpClientWrapper.getMetrics().cacheLookup(endpoint, "hit");
+            return httpClientWrapper.cachedResponse(cached);
+        }
+        DataverseHttpResponse<DatasetVersion> response = getVersionedFromTarget(version, DatasetVersion.class);
+        if (byNumber)
+            httpClientWrapper.getMetrics().cacheLookup(endpoint, "miss");
+        cache.put(id, response.getData(), httpClientWrapper.getMapper());
+        return response;
+    }
+
+    /**
+     * Exports the metadata of the dataset in the format of `exporter` and writes it to `out`. The export is copied to `out` while it is read from the
+     * network, so it is never held in memory as a whole. As `out` may already have received part of the export when an error occurs, the request is not
+     * retried. Only published datasets can be exported.
+     *
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#export-metadata-of-a-dataset-in-various-formats
+     *
+     * @param exporter the name of the exporter, e.g. `ddi`, `oai_datacite` or `schema.org`
+     * @param out      the stream to write the export to; it is not closed
+     * @return the number of bytes written
+     * @see DatasetExporter
+     */
+    public long export(String exporter, OutputStream out) throws IOException, DataverseException {
+        log.trace("ENTER");
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("exporter", exporter);
+        parameters.put("persistentId", id);
+        return httpClientWrapper.getStream(targetBase.resolve("export"), parameters, new HashMap<>(), false, r -> IOUtils.copyLarge(r.getEntity().getContent(), out));
     }
 
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#export-metadata-of-a-dataset-in-various-formats
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#schema-org-json-ld
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#list-files-in-a-dataset
+
+    /**
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#list-files-in-a-dataset
+     *
+     * @param version the version, e.g. `:latest` or `1.0`
+     * @return the file metadata of the files in the version
+     * @see #streamFiles(String)
+     */
+    public DataverseHttpResponse<List<FileMeta>> listFiles(String version) throws IOException, DataverseException {
+        log.trace("ENTER");
+        if (isPersistentId)
+            return httpClientWrapper.get(versionPath(version, "files"), persistentIdParameters(), List.class, FileMeta.class);
+        else
+            return httpClientWrapper.get(versionPath(version, "files"), List.class, FileMeta.class);
+    }
+
+    /**
+     * Like {@link #listFiles(String)}, but returns the file metadata as a stream that is deserialized while it is read from the network, one file at a
+     * time. Use this for datasets with many files, which would otherwise take a lot of memory. The stream holds a connection until its end is reached or
+     * it is closed, so use it in a try-with-resources block:
+     *
+     * <!-- @formatter:off -->
+     * ```java
+     * try (Stream<FileMeta> files = client.dataset(pid).streamFiles(":latest")) {
+     *     files.forEach(f -> ...);
+     * }
+     * ```
+     * <!-- @formatter:on -->
+     *
+     * An I/O error while the stream is consumed is thrown as an `UncheckedIOException`.
+     *
+     * @param version the version, e.g. `:latest` or `1.0`
+     * @return the file metadata of the files in the version
+     */
+    public Stream<FileMeta> streamFiles(String version) throws IOException, DataverseException {
+        log.trace("ENTER");
+        return httpClientWrapper.getDataStream(versionPath(version, "files"), isPersistentId ? persistentIdParameters() : new HashMap<>(), FileMeta.class);
+    }
+
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#view-dataset-files-and-folders-as-a-directory-index
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#list-all-metadata-blocks-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#list-single-metadata-block-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#update-metadata-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#edit-dataset-metadata
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#delete-dataset-metadata
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#publish-a-dataset
+
+    /**
+     * Publishes the dataset. Dataverse finishes the publication in the background, while the dataset is locked; use {@link #getLocks()} to find out when
+     * it is done, or {@link DatasetPublisher} to publish and wait for the locks to be released.
+     *
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#publish-a-dataset
+     *
+     * @param updateType `major` or `minor`
+     * @return the identifiers of the dataset
+     */
+    public DataverseHttpResponse<DatasetPublicationResult> publish(String updateType) throws IOException, DataverseException {
+        log.trace("ENTER");
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("type", updateType);
+        if (isPersistentId) {
+            parameters.put("persistentId", id);
+            return httpClientWrapper.postJsonString(targetBase.resolve(persistendId).resolve("actions/:publish"), "", parameters, new HashMap<>(),
+                DatasetPublicationResult.class);
+        }
+        else {
+            return httpClientWrapper.postJsonString(targetBase.resolve(id).resolve("actions/:publish"), "", parameters, new HashMap<>(),
+                DatasetPublicationResult.class);
+        }
+    }
+
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#delete-dataset-draft
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#set-citation-date-field-type-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#revert-citation-date-field-type-to-default-for-dataset
@@ -73,13 +205,63 @@ public class DatasetApi extends AbstractApi {
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#create-a-private-url-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#get-the-private-url-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#delete-the-private-url-from-a-dataset
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#add-a-file-to-a-dataset
+
+    /**
+     * Adds a file to the draft version of the dataset. The file is streamed from disk or from an `InputStream` while the request is sent, so that files of
+     * any size can be uploaded without holding them in memory. See {@link FileUpload} for progress reporting and checksums.
+     *
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#add-a-file-to-a-dataset
+     *
+     * @param upload the file and its metadata
+     * @return the file metadata of the added file
+     */
+    public DataverseHttpResponse<FileList> addFile(FileUpload upload) throws IOException, DataverseException {
+        log.trace("ENTER");
+        Map<String, Object> jsonData = null;
+        FileMeta metadata = upload.getMetadata();
+        if (metadata != null) {
+            jsonData = new LinkedHashMap<>();
+            if (metadata.getDescription() != null)
+                jsonData.put("description", metadata.getDescription());
+            if (metadata.getDirectoryLabel() != null)
+                jsonData.put("directoryLabel", metadata.getDirectoryLabel());
+            if (metadata.getCategories() != null)
+                jsonData.put("categories", metadata.getCategories());
+            jsonData.put("restrict", metadata.isRestricted());
+        }
+        if (isPersistentId) {
+            HashMap<String, String> parameters = new HashMap<>();
+            parameters.put("persistentId", id);
+            return httpClientWrapper.postMultipart(targetBase.resolve(persistendId).resolve("add"), upload, jsonData, parameters, FileList.class);
+        }
+        else {
+            return httpClientWrapper.postMultipart(targetBase.resolve(id).resolve("add"), upload, jsonData, new HashMap<>(), FileList.class);
+        }
+    }
+
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#report-the-data-file-size-of-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#get-the-size-of-downloading-all-the-files-of-a-dataset-version
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#submit-a-dataset-for-review
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#return-a-dataset-to-author
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#link-a-dataset
-    // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#dataset-locks
+
+    /**
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/native-api.html#dataset-locks
+     *
+     * @return the locks on the dataset; empty if it is not locked
+     */
+    public DataverseHttpResponse<List<DatasetLock>> getLocks() throws IOException, DataverseException {
+        log.trace("ENTER");
+        if (isPersistentId)
+            return httpClientWrapper.get(targetBase.resolve(persistendId).resolve("locks"), persistentIdParameters(), List.class, DatasetLock.class);
+        else
+            return httpClientWrapper.get(targetBase.resolve(id).resolve("locks"), List.class, DatasetLock.class);
+    }
+
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#retrieving-total-views-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#retrieving-unique-views-for-a-dataset
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#retrieving-total-downloads-for-a-dataset
@@ -94,14 +276,21 @@ public class DatasetApi extends AbstractApi {
     /*
      * Helper methods
      */
-    private <D> DataverseHttpResponse<D> getVersionedFromTarget(String endPoint, String version, Class<?>... outputClass) throws IOException, DataverseException {
+    private Path versionPath(String version, String endPoint) {
+        return targetBase.resolve(isPersistentId ? persistendId : id).resolve("versions/").resolve(version + "/").resolve(endPoint);
+    }
+
+    private Map<String, String> persistentIdParameters() {
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("persistentId", id);
+        return parameters;
+    }
+
+    private <D> DataverseHttpResponse<D> getVersionedFromTarget(String version, Class<?>... outputClass) throws IOException, DataverseException {
         log.trace("ENTER");
-        if (isPersistentId) {
-            HashMap<String, String> parameters = new HashMap<>();
-            parameters.put("persistentId", id);
-            return httpClientWrapper.get(targetBase.resolve(persistendId).resolve("versions/").resolve(endPoint), parameters, outputClass);
-        } else {
-            return httpClientWrapper.get(targetBase.resolve(id).resolve("versions/").resolve(endPoint), outputClass);
-        }
+        if (isPersistentId)
+            return httpClientWrapper.get(versionPath(version, ""), persistentIdParameters(), outputClass);
+        else
+            return httpClientWrapper.get(versionPath(version, ""), outputClass);
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetPublicationResult;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link DatasetApi}. The streaming methods `export` and `streamFiles` and the file upload method `addFile` have no asynchronous
+ * variant.
+ */
+public class DatasetAsyncApi extends AbstractAsyncApi {
+
+    private static final Logger log = LoggerFactory.getLogger(DatasetAsyncApi.class);
+    private static final String persistendId = ":persistentId/";
+
+    private final Path targetBase;
+    private final String id;
+    private final boolean isPersistentId;
+
+    protected DatasetAsyncApi(HttpAsyncClientWrapper httpClientWrapper, String id, boolean isPersistentId) {
+        super(httpClientWrapper);
+        this.targetBase = Paths.get("api/datasets/");
+        this.id = id;
+        this.isPersistentId = isPersistentId;
+    }
+
+    /**
+     * @see DatasetApi#listVersions()
+     */
+    public CompletableFuture<DataverseHttpResponse<List<DatasetVersion>>> listVersions() {
+        log.trace("ENTER");
+        Path versions = targetBase.resolve(isPersistentId ? persistendId : id).resolve("versions");
+        if (isPersistentId)
+            return httpClientWrapper.get(versions, persistentIdParameters(), List.class, DatasetVersion.class);
+        else
+            return httpClientWrapper.get(versions, List.class, DatasetVersion.class);
+    }
+
+    /**
+     * Unlike {@link DatasetApi#getVersion(String)}, this does not use a {@link DatasetVersionCache}.
+     *
+     * @see DatasetApi#getVersion(String)
+     */
+    public CompletableFuture<DataverseHttpResponse<DatasetVersion>> getVersion(String version) {
+        log.trace("ENTER");
+        Path path = targetBase.resolve(isPersistentId ? persistendId : id).resolve("versions/").resolve(version);
+        if (isPersistentId)
+            return httpClientWrapper.get(path, persistentIdParameters(), DatasetVersion.class);
+        else
+            return httpClientWrapper.get(path, DatasetVersion.class);
+    }
+
+    /**
+     * @see DatasetApi#listFiles(String)
+     */
+    public CompletableFuture<DataverseHttpResponse<List<FileMeta>>> listFiles(String version) {
+        log.trace("ENTER");
+        Path path = targetBase.resolve(isPersistentId ? persistendId : id).resolve("versions/").resolve(version + "/").resolve("files");
+        if (isPersistentId)
+            return httpClientWrapper.get(path, persistentIdParameters(), List.class, FileMeta.class);
+        else
+            return httpClientWrapper.get(path, List.class, FileMeta.class);
+    }
+
+    /**
+     * @see DatasetApi#publish(String)
+     */
+    public CompletableFuture<DataverseHttpResponse<DatasetPublicationResult>> publish(String updateType) {
+        log.trace("ENTER");
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("type", updateType);
+        if (isPersistentId) {
+            parameters.put("persistentId", id);
+            return httpClientWrapper.postJsonString(targetBase.resolve(persistendId).resolve("actions/:publish"), "", parameters, new HashMap<>(),
+                DatasetPublicationResult.class);
+        }
+        else {
+            return httpClientWrapper.postJsonString(targetBase.resolve(id).resolve("actions/:publish"), "", parameters, new HashMap<>(),
+                DatasetPublicationResult.class);
+        }
+    }
+
+    /**
+     * @see DatasetApi#getLocks()
+     */
+    public CompletableFuture<DataverseHttpResponse<List<DatasetLock>>> getLocks() {
+        log.trace("ENTER");
+        if (isPersistentId)
+            return httpClientWrapper.get(targetBase.resolve(persistendId).resolve("locks"), persistentIdParameters(), List.class, DatasetLock.class);
+        else
+            return httpClientWrapper.get(targetBase.resolve(id).resolve("locks"), List.class, DatasetLock.class);
+    }
+
+    /*
+     * Helper methods
+     */
+    private Map<String, String> persistentIdParameters() {
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("persistentId", id);
+        return parameters;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Requests the same information for many datasets, with up to `parallelism` requests in flight at the same time. Obtain one with
+ * {@link DataverseClient#datasets(Collection)}:
+ *
+ * <!-- @formatter:off -->
+ * ```java
+ * List<BatchResult<DatasetVersion>> versions = client.datasets(pids).getVersion(":latest-published");
+ * ```
+ * <!-- @formatter:on -->
+ *
+ * The results are delivered either in the order of the input or in the order in which the requests complete. In the first case a result that is ready before
+ * the ones preceding it is kept until those are done; the number of requests that are in flight or waiting is limited to twice the parallelism, so a slow
+ * request holds up the others for at most that many requests.
+ *
+ * A failed request does not abort the batch; its error is reported in the {@link BatchResult} and the batch continues with the next dataset.
+ */
+public class DatasetBatch {
+    private static final Logger log = LoggerFactory.getLogger(DatasetBatch.class);
+
+    interface DatasetCall<D> {
+        D call(String persistentId) throws IOException, DataverseException;
+    }
+
+    private final DataverseClient client;
+    private final Collection<String> persistentIds;
+    private final int parallelism;
+
+    DatasetBatch(DataverseClient client, Collection<String> persistentIds, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.client = client;
+        this.persistentIds = persistentIds;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Retrieves one version of every dataset. See {@link DatasetApi#getVersion(String)}.
+     *
+     * @param version the version to retrieve, e.g. `1.0`, `:latest-published` or `:draft`
+     * @return the outcome for every dataset, in the order of the input
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public List<BatchResult<DatasetVersion>> getVersion(String version) throws InterruptedIOException {
+        List<BatchResult<DatasetVersion>> results = new ArrayList<>(persistentIds.size());
+        getVersion(version, results::add);
+        return results;
+    }
+
+    /**
+     * Like {@link #getVersion(String)}, but passes the outcome for every dataset to `resultConsumer` as soon as it and the ones preceding it are known,
+     * instead of collecting them in a list.
+     *
+     * @param version        the version to retrieve
+     * @param resultConsumer receives the outcomes, in the order of the input
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public void getVersion(String version, Consumer<? super BatchResult<DatasetVersion>> resultConsumer) throws InterruptedIOException {
+        run(pid -> client.dataset(pid).getVersion(version).getData(), true, resultConsumer);
+    }
+
+    /**
+     * Like {@link #getVersion(String, Consumer)}, but passes the outcomes to `resultConsumer` in the order in which the requests complete, so that a slow
+     * request does not hold up the results of the others.
+     *
+     * @param version        the version to retrieve
+     * @param resultConsumer receives the outcomes, in the order of completion
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public void getVersionAsCompleted(String version, Consumer<? super BatchResult<DatasetVersion>> resultConsumer) throws InterruptedIOException {
+        run(pid -> client.dataset(pid).getVersion(version).getData(), false, resultConsumer);
+    }
+
+    <D> void run(DatasetCall<D> call, boolean inputOrder, Consumer<? super BatchResult<D>> resultConsumer) throws InterruptedIOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            if (inputOrder)
+                runInInputOrder(executor, call, resultConsumer);
+            else
+                runInCompletionOrder(executor, call, resultConsumer);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing batch");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <D> void runInInputOrder(ExecutorService executor, DatasetCall<D> call, Consumer<? super BatchResult<D>> resultConsumer)
+        throws InterruptedException {
+        Deque<Future<BatchResult<D>>> window = new ArrayDeque<>();
+        for (String persistentId : persistentIds) {
+            if (window.size() >= 2 * parallelism)
+                resultConsumer.accept(result(window.removeFirst()));
+            window.addLast(executor.submit(() -> execute(call, persistentId)));
+        }
+        while (!window.isEmpty())
+            resultConsumer.accept(result(window.removeFirst()));
+    }
+
+    private <D> void runInCompletionOrder(ExecutorService executor, DatasetCall<D> call, Consumer<? super BatchResult<D>> resultConsumer)
+        throws InterruptedException {
+        CompletionService<BatchResult<D>> completionService = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        for (String persistentId : persistentIds) {
+            if (inFlight >= 2 * parallelism) {
+                resultConsumer.accept(result(completionService.take()));
+                inFlight--;
+            }
+            completionService.submit(() -> execute(call, persistentId));
+            inFlight++;
+        }
+        for (; inFlight > 0; inFlight--)
+            resultConsumer.accept(result(completionService.take()));
+    }
+
+    private static <D> BatchResult<D> execute(DatasetCall<D> call, String persistentId) {
+        try {
+            return new BatchResult<>(persistentId, call.call(persistentId), null);
+        }
+        catch (IOException | DataverseException | RuntimeException e) {
+            log.warn("Request for {} failed: {}", persistentId, e.getMessage());
+            return new BatchResult<>(persistentId, null, e);
+        }
+    }
+
+    private static <D> BatchResult<D> result(Future<BatchResult<D>> future) throws InterruptedException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            // execute() catches all exceptions, so this can only be an Error
+            throw (Error) e.getCause();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Exports the metadata of many datasets in one or more formats. Up to `parallelism` exports are requested at the same time, while the exports are written to
+ * the {@link ExportSink} in the order of the input: all formats of the first dataset, then all formats of the second, and so on.
+ *
+ * Every export is spooled to a temporary file while it is read from the network, and copied to the sink when it has been received completely and its
+ * turn has come. No export is held in memory as a whole, and an export that fails halfway, e.g. because the connection is reset, leaves no truncated
+ * entry in the sink. The number of exports that are in progress or waiting is limited to twice the parallelism, which bounds the space taken by the
+ * temporary files.
+ *
+ * A failed export does not abort the run; it is reported in the results and the run continues with the next one.
+ */
+public class DatasetExporter {
+    private static final Logger log = LoggerFactory.getLogger(DatasetExporter.class);
+
+    interface ExportFunction {
+        void export(String persistentId, String exporter, OutputStream out) throws IOException, DataverseException;
+    }
+
+    private final ExportFunction exportFunction;
+    private final int parallelism;
+
+    /**
+     * @param client      the client to request the exports with
+     * @param parallelism the maximum number of exports that are requested at the same time
+     */
+    public DatasetExporter(DataverseClient client, int parallelism) {
+        this((pid, exporter, out) -> client.dataset(pid).export(exporter, out), parallelism);
+    }
+
+    DatasetExporter(ExportFunction exportFunction, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.exportFunction = exportFunction;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Exports every dataset in every format and writes the exports to `sink`. The sink is not closed.
+     *
+     * @param persistentIds the persistent identifiers of the datasets; iterated lazily, so it may be a large or generated collection
+     * @param exporters     the names of the exporters, e.g. `ddi`, `oai_datacite` and `schema.org`
+     * @param sink          the destination of the exports
+     * @return the outcome of every export, in the order of the input
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public List<ExportResult> export(Iterable<String> persistentIds, List<String> exporters, ExportSink sink) throws InterruptedIOException {
+        List<ExportResult> results = new ArrayList<>();
+        export(persistentIds, exporters, sink, results::add);
+        return results;
+    }
+
+    /**
+     * Like {@link #export(Iterable, List, ExportSink)}, but passes the outcome of every export to `resultConsumer` as soon as it is known, instead of
+     * collecting them in a list. Use this for very long runs, e.g. to log progress or to record the failures.
+     *
+     * @param persistentIds  the persistent identifiers of the datasets
+     * @param exporters      the names of the exporters
+     * @param sink           the destination of the exports
+     * @param resultConsumer receives the outcomes, in the order of the input
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public void export(Iterable<String> persistentIds, List<String> exporters, ExportSink sink, Consumer<? super ExportResult> resultConsumer)
+        throws InterruptedIOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Deque<Job> window = new ArrayDeque<>();
+        try {
+            for (String persistentId : persistentIds) {
+                for (String exporter : exporters) {
+                    if (window.size() >= 2 * parallelism)
+                        resultConsumer.accept(complete(window.removeFirst(), sink));
+                    Spool spool = new Spool(persistentId, exporter);
+                    window.addLast(new Job(spool, executor.submit(() -> {
+                        exportFunction.export(persistentId, exporter, spool);
+                        return null;
+                    })));
+                }
+            }
+            while (!window.isEmpty())
+                resultConsumer.accept(complete(window.removeFirst(), sink));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting");
+        }
+        finally {
+            executor.shutdownNow();
+            for (Job job : window)
+                job.spool.discard();
+        }
+    }
+
+    private static ExportResult complete(Job job, ExportSink sink) throws InterruptedException {
+        Spool spool = job.spool;
+        try {
+            job.future.get();
+            return new ExportResult(spool.persistentId, spool.exporter, spool.copyTo(sink), null);
+        }
+        catch (ExecutionException e) {
+            spool.discard();
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+                throw (Error) cause;
+            log.warn("Export of {} as {} failed: {}", spool.persistentId, spool.exporter, cause.getMessage());
+            return new ExportResult(spool.persistentId, spool.exporter, -1, (Exception) cause);
+        }
+        catch (IOException e) {
+            spool.discard();
+            log.warn("Writing export of {} as {} failed: {}", spool.persistentId, spool.exporter, e.getMessage());
+            return new ExportResult(spool.persistentId, spool.exporter, -1, e);
+        }
+        catch (InterruptedException e) {
+            spool.discard();
+            throw e;
+        }
+    }
+
+    private static class Job {
+        private final Spool spool;
+        private final Future<?> future;
+
+        Job(Spool spool, Future<?> future) {
+            this.spool = spool;
+            this.future = future;
+        }
+    }
+
+    /*
+     * Receives one export from a worker thread and spools it to a temporary file, which is only created when there is content.
+     */
+    private static class Spool extends OutputStream {
+        private final String persistentId;
+        private final String exporter;
+        private Path spoolFile;
+        private OutputStream out;
+        private boolean closed;
+        private long size;
+
+        Spool(String persistentId, String exporter) {
+            this.persistentId = persistentId;
+            this.exporter = exporter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Export of " + persistentId + " as " + exporter + " was abandoned");
+            if (len == 0)
+                return;
+            if (out == null) {
+                spoolFile = Files.createTempFile("dataverse-export-", ".tmp");
+                out = new BufferedOutputStream(Files.newOutputStream(spoolFile));
+            }
+            out.write(b, off, len);
+            size += len;
+        }
+
+        /*
+         * Copies an export that was received completely to a new entry in the sink; an empty export still gets an entry.
+         */
+        synchronized long copyTo(ExportSink sink) throws IOException {
+            closed = true;
+            try {
+                if (out != null)
+                    out.close();
+                try (OutputStream entry = sink.openEntry(persistentId, exporter)) {
+                    if (spoolFile != null)
+                        Files.copy(spoolFile, entry);
+                }
+                return size;
+            }
+            finally {
+                discard();
+            }
+        }
+
+        synchronized void discard() {
+            closed = true;
+            IOUtils.closeQuietly(out);
+            if (spoolFile != null)
+                FileUtils.deleteQuietly(spoolFile.toFile());
+            out = null;
+            spoolFile = null;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the locks on many datasets at once, e.g. of all datasets that are being ingested, and notifies listeners when the locks on a dataset
+ * change.
+ *
+ * All datasets are polled by tasks on one `ScheduledExecutorService`, so the number of threads does not depend on the number of datasets. The first poll
+ * of a dataset is made at a random moment within the poll interval, and every following poll one interval after the previous one, with a small jitter.
+ * The polls of datasets that are added at the same time are therefore spread evenly over the interval, instead of coming in bursts. Datasets that are
+ * locked are polled every {@link #setLockedPollIntervalMillis(long) locked poll interval}, and datasets that are not locked only every
+ * {@link #setUnlockedPollIntervalMillis(long) unlocked poll interval}, which is normally much longer.
+ *
+ * The watcher should be closed after use. If it was created with a scheduler of the caller, that scheduler is not shut down. A watcher and a
+ * {@link DatasetPublisher} can share a scheduler.
+ */
+public class DatasetLockWatcher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DatasetLockWatcher.class);
+
+    /**
+     * Receives changes of the locks on the watched datasets. Listeners are called on a thread of the scheduler and should return quickly.
+     */
+    public interface Listener {
+        /**
+         * Called when the lock types on a dataset have changed. Before the first poll, a dataset is assumed to have no locks, so this is also called after
+         * the first poll if the dataset is locked.
+         *
+         * @param persistentId the persistent identifier of the dataset
+         * @param from         the previous lock types
+         * @param to           the current lock types; empty if the dataset is no longer locked
+         */
+        void locksChanged(String persistentId, Set<String> from, Set<String> to);
+
+        /**
+         * Called when the locks of a dataset could not be retrieved. The dataset stays watched.
+         *
+         * @param persistentId the persistent identifier of the dataset
+         * @param e            the `IOException` or `DataverseException`
+         */
+        default void pollFailed(String persistentId, Exception e) {
+        }
+    }
+
+    interface LocksFetcher {
+        List<DatasetLock> getLocks(String persistentId) throws IOException, DataverseException;
+    }
+
+    private final LocksFetcher fetcher;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long lockedPollIntervalMillis = 5_000;
+    private volatile long unlockedPollIntervalMillis = 60_000;
+
+    /**
+     * Creates a watcher with its own scheduler.
+     *
+     * @param client  the client to poll with
+     * @param threads the number of threads of the scheduler, i.e. the maximum number of polls in flight
+     */
+    public DatasetLockWatcher(DataverseClient client, int threads) {
+        this(pid -> client.dataset(pid).getLocks().getData(), DatasetPublisher.createScheduler(threads), true);
+    }
+
+    /**
+     * Creates a watcher that runs its polls on `scheduler`, which may be shared with other components.
+     *
+     * @param client    the client to poll with
+     * @param scheduler the scheduler
+     */
+    public DatasetLockWatcher(DataverseClient client, ScheduledExecutorService scheduler) {
+        this(pid -> client.dataset(pid).getLocks().getData(), scheduler, false);
+    }
+
+    DatasetLockWatcher(LocksFetcher fetcher, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Starts watching a dataset. Does nothing if the dataset is already watched.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     */
+    public void watch(String persistentId) {
+        watches.computeIfAbsent(persistentId, pid -> {
+            Watch watch = new Watch(pid);
+            watch.schedule(ThreadLocalRandom.current().nextLong(Math.max(1, lockedPollIntervalMillis)));
+            return watch;
+        });
+    }
+
+    /**
+     * Stops watching a dataset. A poll that is in progress is completed, but its result is not reported.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     */
+    public void unwatch(String persistentId) {
+        Watch watch = watches.remove(persistentId);
+        if (watch != null)
+            watch.cancel();
+    }
+
+    /**
+     * @return the persistent identifiers of the watched datasets
+     */
+    public Set<String> getWatched() {
+        return Collections.unmodifiableSet(new TreeSet<>(watches.keySet()));
+    }
+
+    /**
+     * @param persistentId the persistent identifier of a watched dataset
+     * @return the lock types found by the last poll of the dataset; empty if it is not locked, was not polled yet or is not watched
+     */
+    public Set<String> getLockTypes(String persistentId) {
+        Watch watch = watches.get(persistentId);
+        return watch == null ? Collections.emptySet() : watch.lockTypes;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public long getLockedPollIntervalMillis() {
+        return lockedPollIntervalMillis;
+    }
+
+    /**
+     * @param lockedPollIntervalMillis the interval between polls of a dataset that was locked at the last poll, and the interval within which the first
+     *                                 polls are spread; default 5 seconds
+     */
+    public void setLockedPollIntervalMillis(long lockedPollIntervalMillis) {
+        this.lockedPollIntervalMillis = lockedPollIntervalMillis;
+    }
+
+    public long getUnlockedPollIntervalMillis() {
+        return unlockedPollIntervalMillis;
+    }
+
+    /**
+     * @param unlockedPollIntervalMillis the interval between polls of a dataset that was not locked at the last poll; default 1 minute
+     */
+    public void setUnlockedPollIntervalMillis(long unlockedPollIntervalMillis) {
+        this.unlockedPollIntervalMillis = unlockedPollIntervalMillis;
+    }
+
+    /**
+     * Stops watching all datasets.
+     */
+    @Override
+    public void close() {
+        for (String persistentId : watches.keySet())
+            unwatch(persistentId);
+        if (ownsScheduler)
+            scheduler.shutdownNow();
+    }
+
+    private void notifyListeners(String persistentId, Set<String> from, Set<String> to) {
+        for (Listener listener : listeners) {
+            try {
+                listener.locksChanged(persistentId, from, to);
+            }
+            catch (RuntimeException e) {
+                log.error("Dataset lock listener failed", e);
+            }
+        }
+    }
+
+    private void notifyPollFailed(String persistentId, Exception e) {
+        for (Listener listener : listeners) {
+            try {
+                listener.pollFailed(persistentId, e);
+            }
+            catch (RuntimeException re) {
+                log.error("Dataset lock listener failed", re);
+            }
+        }
+    }
+
+    /**
+     * @return `interval` with a jitter of 10% either way
+     */
+    static long jitter(long interval) {
+        return Math.max(1, Math.round(interval * (0.9 + 0.2 * ThreadLocalRandom.current().nextDouble())));
+    }
+
+    private class Watch {
+        private final String persistentId;
+        private volatile Set<String> lockTypes = Collections.emptySet();
+        private volatile ScheduledFuture<?> next;
+        private volatile boolean cancelled;
+
+        Watch(String persistentId) {
+            this.persistentId = persistentId;
+        }
+
+        void schedule(long delayMillis) {
+            if (!cancelled)
+                next = scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = next;
+            if (f != null)
+                f.cancel(false);
+        }
+
+        private void poll() {
+            if (cancelled)
+                return;
+            try {
+                Set<String> current = fetcher.getLocks(persistentId).stream()
+                    .map(DatasetLock::getLockType)
+                    .collect(Collectors.toCollection(TreeSet::new));
+                current = Collections.unmodifiableSet(current);
+                Set<String> previous = lockTypes;
+                lockTypes = current;
+                if (!cancelled && !current.equals(previous)) {
+                    log.debug("Locks on {} changed from {} to {}", persistentId, previous, current);
+                    notifyListeners(persistentId, previous, current);
+                }
+            }
+            catch (Exception e) {
+                log.warn("Could not get locks of {}: {}", persistentId, e.getMessage());
+                if (!cancelled)
+                    notifyPollFailed(persistentId, e);
+            }
+            schedule(jitter(lockTypes.isEmpty() ? unlockedPollIntervalMillis : lockedPollIntervalMillis));
+        }
+    }
+}
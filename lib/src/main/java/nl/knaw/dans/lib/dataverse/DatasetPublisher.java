@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetPublicationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes datasets and waits until Dataverse has finished publishing them. Publication is completed by Dataverse in the background, while the dataset is
+ * locked. {@link #publishAndAwait(String, String)} returns a future immediately, and completes it when the dataset has no more locks of the
+ * {@link #setAwaitedLockTypes(Set) awaited types}.
+ *
+ * The locks are polled by tasks on one `ScheduledExecutorService`, so a large number of datasets can be awaited at the same time without a sleeping
+ * thread for each of them. The interval between polls of a dataset starts small, to notice quick publications early, and grows while the dataset stays
+ * locked, so that long publications cost few requests. A random jitter spreads the polls of datasets that were published at the same time.
+ *
+ * The publisher should be closed after use. Closing it fails the futures of the datasets that are still awaited. If it was created with a scheduler of the
+ * caller, that scheduler is not shut down.
+ */
+public class DatasetPublisher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DatasetPublisher.class);
+
+    /**
+     * The lock types that are awaited by default.
+     */
+    public static final Set<String> DEFAULT_AWAITED_LOCK_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "finalizePublication", "Ingest", "Workflow", "pidRegister")));
+
+    interface Operations {
+        DatasetPublicationResult publish(String persistentId, String updateType) throws IOException, DataverseException;
+
+        List<DatasetLock> getLocks(String persistentId) throws IOException, DataverseException;
+    }
+
+    private final Operations operations;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Set<CompletableFuture<?>> pendingFutures = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private volatile Set<String> awaitedLockTypes = DEFAULT_AWAITED_LOCK_TYPES;
+    private volatile long initialPollIntervalMillis = 500;
+    private volatile long maxPollIntervalMillis = 30_000;
+    private volatile double pollIntervalMultiplier = 1.5;
+    private volatile long timeoutMillis = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Creates a publisher with its own scheduler.
+     *
+     * @param client  the client to publish and poll with
+     * @param threads the number of threads of the scheduler, i.e. the maximum number of polls in flight
+     */
+    public DatasetPublisher(DataverseClient client, int threads) {
+        this(operations(client), createScheduler(threads), true);
+    }
+
+    /**
+     * Creates a publisher that runs its polls on `scheduler`, which may be shared with other components.
+     *
+     * @param client    the client to publish and poll with
+     * @param scheduler the scheduler
+     */
+    public DatasetPublisher(DataverseClient client, ScheduledExecutorService scheduler) {
+        this(operations(client), scheduler, false);
+    }
+
+    DatasetPublisher(Operations operations, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.operations = operations;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    private static Operations operations(DataverseClient client) {
+        return new Operations() {
+
+            @Override
+            public DatasetPublicationResult publish(String persistentId, String updateType) throws IOException, DataverseException {
+                return client.dataset(persistentId).publish(updateType).getData();
+            }
+
+            @Override
+            public List<DatasetLock> getLocks(String persistentId) throws IOException, DataverseException {
+                return client.dataset(persistentId).getLocks().getData();
+            }
+        };
+    }
+
+    static ScheduledExecutorService createScheduler(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "dataverse-lock-poller-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Publishes a dataset and waits until the publication has finished. The future is completed
+     *
+     * - with the result of the publish request, when the dataset has no more locks of the awaited types;
+     * - exceptionally with the `IOException` or `DataverseException` of the publish request or of a poll;
+     * - exceptionally with a `TimeoutException` if the dataset is still locked after the {@link #setTimeoutMillis(long) timeout};
+     * - exceptionally with an `IllegalStateException` if the publisher is closed first, or with a `RejectedExecutionException` if the scheduler no longer
+     *   accepts tasks.
+     *
+     * Cancelling the future stops the polling.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     * @param updateType   `major` or `minor`
+     * @return a future for the result of the publish request
+     */
+    public CompletableFuture<DatasetPublicationResult> publishAndAwait(String persistentId, String updateType) {
+        CompletableFuture<DatasetPublicationResult> future = track(new CompletableFuture<>());
+        execute(future, () -> {
+            try {
+                DatasetPublicationResult result = operations.publish(persistentId, updateType);
+                poll(new Pending<>(persistentId, result, future));
+            }
+            catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Waits until a dataset has no more locks of the awaited types, e.g. after it was published or after files were added to it.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     * @return a future that is completed when the dataset is released; see {@link #publishAndAwait(String, String)} for the exceptions
+     */
+    public CompletableFuture<Void> awaitUnlocked(String persistentId) {
+        CompletableFuture<Void> future = track(new CompletableFuture<>());
+        execute(future, () -> poll(new Pending<>(persistentId, null, future)));
+        return future;
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pendingFutures.add(future);
+        future.whenComplete((r, e) -> pendingFutures.remove(future));
+        // Checked after adding, so that a future created while the publisher is being closed is failed by one of the two
+        if (closed)
+            future.completeExceptionally(new IllegalStateException("DatasetPublisher is closed"));
+        return future;
+    }
+
+    private void execute(CompletableFuture<?> future, Runnable task) {
+        try {
+            scheduler.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private <T> void poll(Pending<T> pending) {
+        if (pending.future.isDone())
+            return;
+        try {
+            List<DatasetLock> locks = operations.getLocks(pending.persistentId);
+            Set<String> awaited = awaitedLockTypes;
+            if (locks.stream().noneMatch(l -> awaited.contains(l.getLockType()))) {
+                log.debug("Dataset {} released after {} polls", pending.persistentId, pending.polls + 1);
+                pending.future.complete(pending.result);
+                return;
+            }
+        }
+        catch (Exception e) {
+            pending.future.completeExceptionally(e);
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.startNanos);
+        if (elapsed >= timeoutMillis) {
+            pending.future.completeExceptionally(new TimeoutException("Dataset " + pending.persistentId + " still locked after " + elapsed + " ms"));
+            return;
+        }
+        long delay = Math.min(nextPollDelayMillis(pending.polls++), timeoutMillis - elapsed);
+        try {
+            scheduler.schedule(() -> poll(pending), delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the delay before the poll following poll number `polls` (counting from 0), with a jitter of 20% either way
+     */
+    long nextPollDelayMillis(int polls) {
+        double delay = Math.min(maxPollIntervalMillis, initialPollIntervalMillis * Math.pow(pollIntervalMultiplier, polls));
+        return Math.max(1, Math.round(delay * (0.8 + 0.4 * ThreadLocalRandom.current().nextDouble())));
+    }
+
+    public Set<String> getAwaitedLockTypes() {
+        return awaitedLockTypes;
+    }
+
+    /**
+     * @param awaitedLockTypes the lock types that must be gone before a dataset is considered released; default {@link #DEFAULT_AWAITED_LOCK_TYPES}
+     */
+    public void setAwaitedLockTypes(Set<String> awaitedLockTypes) {
+        this.awaitedLockTypes = Collections.unmodifiableSet(new HashSet<>(awaitedLockTypes));
+    }
+
+    public long getInitialPollIntervalMillis() {
+        return initialPollIntervalMillis;
+    }
+
+    public void setInitialPollIntervalMillis(long initialPollIntervalMillis) {
+        this.initialPollIntervalMillis = initialPollIntervalMillis;
+    }
+
+    public long getMaxPollIntervalMillis() {
+        return maxPollIntervalMillis;
+    }
+
+    public void setMaxPollIntervalMillis(long maxPollIntervalMillis) {
+        this.maxPollIntervalMillis = maxPollIntervalMillis;
+    }
+
+    public double getPollIntervalMultiplier() {
+        return pollIntervalMultiplier;
+    }
+
+    public void setPollIntervalMultiplier(double pollIntervalMultiplier) {
+        this.pollIntervalMultiplier = pollIntervalMultiplier;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis the maximum time to wait for a dataset to be released, counted from the first poll; default 1 hour
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Stops polling, and completes the futures of the datasets that are still awaited exceptionally with an `IllegalStateException`.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownsScheduler)
+            scheduler.shutdownNow();
+        for (CompletableFuture<?> future : pendingFutures)
+            future.completeExceptionally(new IllegalStateException("DatasetPublisher was closed before the dataset was released"));
+    }
+
+    private static class Pending<T> {
+        private final String persistentId;
+        private final T result;
+        private final CompletableFuture<T> future;
+        private final long startNanos = System.nanoTime();
+        private int polls;
+
+        Pending(String persistentId, T result, CompletableFuture<T> future) {
+            this.persistentId = persistentId;
+            this.result = result;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of deserialized published dataset versions. A published version of a dataset, e.g. version `2.1`, does not change anymore, so once it has been
+ * retrieved it can be reused without contacting the server or deserializing it again. When a {@link DataverseClient} is configured with a cache (see
+ * {@link DataverseClientConfig#setDatasetVersionCache(DatasetVersionCache)}), {@link DatasetApi#getVersion(String)} first looks up versions that are
+ * requested by number, and stores every version it retrieves that has the state `RELEASED`, also if it was requested as `:latest-published` or
+ * `:latest`.
+ *
+ * The cached objects are returned to every caller that requests the same version, so they must not be modified. A response that is served from the cache
+ * has no body, so {@link DataverseResponse#getEnvelopeAsString()} and {@link DataverseResponse#getEnvelopeAsJson()} are not available for it.
+ *
+ * The cache is bounded by the approximate total size of the cached objects in memory. The size of a version is estimated from the length of its JSON
+ * representation, as serialized with the object mapper of the client that stores it. When the total exceeds the maximum, the least recently used versions are evicted.
+ *
+ * A published version can still be deaccessioned, which changes its state. A cached version does not reflect that; use {@link #invalidate(String)} after
+ * deaccessioning a dataset, or do not use the cache if deaccessioned versions must be recognized.
+ *
+ * The cache can be backed by a {@link DatasetVersionDiskCache}, so that versions evicted from memory, or retrieved before a restart of the application,
+ * can still be used without contacting the server. Versions are then also written to disk when they are stored, and read back from disk when they are
+ * not in memory. Errors of the disk cache are logged and otherwise treated as a cache miss.
+ */
+public class DatasetVersionCache {
+    private static final Logger log = LoggerFactory.getLogger(DatasetVersionCache.class);
+    private static final Pattern VERSION_NUMBER = Pattern.compile("(\\d+)(?:\\.(\\d+))?");
+
+    /*
+     * Strings take two bytes per character, and objects, references and collections add overhead that the JSON representation does not have
+     */
+    private static final int SIZE_FACTOR = 3;
+
+    private final WeightedLruCache<String, DatasetVersion> versions;
+    private final DatasetVersionDiskCache diskCache;
+
+    /**
+     * @param maxSizeBytes the maximum approximate total size of the cached versions in memory, in bytes
+     */
+    public DatasetVersionCache(long maxSizeBytes) {
+        this(maxSizeBytes, null);
+    }
+
+    /**
+     * @param maxSizeBytes the maximum approximate total size of the cached versions in memory, in bytes
+     * @param diskCache    the disk cache to back this cache with, or `null` for none; it is not closed by this cache
+     */
+    public DatasetVersionCache(long maxSizeBytes, DatasetVersionDiskCache diskCache) {
+        this.versions = new WeightedLruCache<>(maxSizeBytes);
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * @param datasetId the persistent identifier or database id of the dataset, as used to address it
+     * @param version   the requested version
+     * @param mapper    the object mapper of the client, used to deserialize versions read from disk
+     * @return the cached version, or `null` if it is not cached or `version` is not a version number
+     */
+    DatasetVersion get(String datasetId, String version, ObjectMapper mapper) {
+        String number = versionNumber(version);
+        if (number == null)
+            return null;
+        String key = key(datasetId, number);
+        DatasetVersion datasetVersion = versions.get(key);
+        if (datasetVersion == null && diskCache != null) {
+            try {
+                byte[] json = diskCache.get(key);
+                if (json != null) {
+                    datasetVersion = mapper.readValue(json, DatasetVersion.class);
+                    versions.put(key, datasetVersion, estimateSize(json));
+                }
+            }
+            catch (IOException e) {
+                log.warn("Could not read version {} from disk cache", key, e);
+            }
+        }
+        return datasetVersion;
+    }
+
+    /**
+     * Caches `datasetVersion` if it is published. A published version does not change, so if it is already cached in memory or on disk, it is not stored
+     * again.
+     *
+     * @param datasetId      the persistent identifier or database id of the dataset, as used to address it
+     * @param datasetVersion the retrieved version
+     * @param mapper         the object mapper of the client, used to serialize the version once, both to estimate its size and to write it to disk
+     */
+    void put(String datasetId, DatasetVersion datasetVersion, ObjectMapper mapper) {
+        if (datasetVersion == null || !"RELEASED".equals(datasetVersion.getVersionState()))
+            return;
+        String key = key(datasetId, datasetVersion.getVersionNumber() + "." + datasetVersion.getVersionMinorNumber());
+        if (versions.get(key) != null)
+            return;
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(datasetVersion);
+        }
+        catch (IOException e) {
+            log.warn("Could not serialize version {}; not caching it", key, e);
+            return;
+        }
+        versions.put(key, datasetVersion, estimateSize(json));
+        if (diskCache != null) {
+            try {
+                if (!diskCache.contains(key))
+                    diskCache.put(key, json);
+            }
+            catch (IOException e) {
+                log.warn("Could not write version {} to disk cache", key, e);
+            }
+        }
+    }
+
+    /**
+     * Removes all versions of a dataset from the cache.
+     *
+     * @param datasetId the persistent identifier or database id of the dataset, as used to address it
+     */
+    public void invalidate(String datasetId) {
+        String prefix = datasetId + " ";
+        versions.removeIf((k, v) -> k.startsWith(prefix));
+        if (diskCache != null) {
+            try {
+                diskCache.removeIf(k -> k.startsWith(prefix));
+            }
+            catch (IOException e) {
+                log.warn("Could not remove versions of {} from disk cache", datasetId, e);
+            }
+        }
+    }
+
+    /**
+     * Removes all versions from the cache, including the disk cache.
+     */
+    public void invalidateAll() {
+        versions.clear();
+        if (diskCache != null) {
+            try {
+                diskCache.clear();
+            }
+            catch (IOException e) {
+                log.warn("Could not clear disk cache", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of versions cached in memory
+     */
+    public int getEntryCount() {
+        return versions.size();
+    }
+
+    /**
+     * @return the approximate total size of the cached versions, in bytes
+     */
+    public long getSizeBytes() {
+        return versions.getWeight();
+    }
+
+    /**
+     * @return `version` as `major.minor`, or `null` if it is not a version number, such as `:latest` or `:draft`
+     */
+    static String versionNumber(String version) {
+        Matcher m = VERSION_NUMBER.matcher(version);
+        if (!m.matches())
+            return null;
+        return m.group(1) + "." + (m.group(2) == null ? "0" : m.group(2));
+    }
+
+    private static String key(String datasetId, String versionNumber) {
+        return datasetId + " " + versionNumber;
+    }
+
+    static long estimateSize(byte[] json) {
+        return (long) json.length * SIZE_FACTOR;
+    }
+}
@@ -0,0 +1,600 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Persistent tier of a {@link DatasetVersionCache}, which keeps published dataset versions on local disk, so that they survive a restart of the
+ * application. The JSON of the versions is compressed and appended to a segment file. A hash index from key to position in the segment file is kept in a
+ * memory-mapped file, so that a lookup costs no more than a probe in memory and one read from the segment file, which the operating system usually serves
+ * from its page cache.
+ *
+ * The segment file is only appended to, so replaced and removed versions leave garbage behind. When the segment file grows beyond the maximum size, or
+ * more than half of it is garbage, it is compacted: the live versions are copied to a new segment file and the index is rebuilt. If the live versions
+ * alone take more than three quarters of the maximum size, the versions that were stored first are dropped during compaction.
+ *
+ * Every record in the segment file has a checksum. If the application stops without closing the cache, the index may not match the segment file anymore;
+ * it is then rebuilt from the segment file when the cache is opened, and an incompletely written record at the end is discarded.
+ *
+ * A directory must be used by one cache instance at a time. All methods are thread-safe; lookups can run concurrently.
+ */
+public class DatasetVersionDiskCache implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DatasetVersionDiskCache.class);
+
+    private static final String SEGMENT_FILE = "versions.seg";
+    private static final String INDEX_FILE = "versions.idx";
+    private static final int INDEX_MAGIC = 0x44564958; // DVIX
+    private static final int INDEX_FORMAT = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.6;
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+    private static final long REMOVED = -1;
+
+    /*
+     * Index header fields
+     */
+    private static final int H_MAGIC = 0;
+    private static final int H_FORMAT = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_USED = 16;
+    private static final int H_SEGMENT_LENGTH = 24;
+    private static final int H_LIVE_BYTES = 32;
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel segment;
+    private long segmentLength;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private int used;
+    private long liveBytes;
+
+    /**
+     * Opens the cache in `directory`, creating it if it does not exist.
+     *
+     * @param directory    the directory for the segment and index files
+     * @param maxSizeBytes the maximum size of the segment file
+     * @throws IOException if the files cannot be opened or created
+     */
+    public DatasetVersionDiskCache(Path directory, long maxSizeBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSizeBytes = maxSizeBytes;
+        segment = FileChannel.open(directory.resolve(SEGMENT_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentLength = segment.size();
+        if (!openIndex()) {
+            log.info("Rebuilding index of {} from segment file", directory);
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * @return the uncompressed value of `key`, or `null` if it is not in the cache
+     */
+    byte[] get(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int slot = find(keyBytes, hash(keyBytes));
+            if (slot < 0)
+                return null;
+            long offset = index.getLong(slotPosition(slot) + 8);
+            ByteBuffer header = readFully(offset, RECORD_HEADER_SIZE);
+            int dataLength = header.getInt(4);
+            int crc = header.getInt(8);
+            byte[] data = readFully(offset + RECORD_HEADER_SIZE + keyBytes.length, dataLength).array();
+            if (crc(data) != crc)
+                throw new IOException("Corrupt record for " + key + " in " + directory.resolve(SEGMENT_FILE));
+            return inflate(data);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether `key` is in the cache, without reading its value
+     */
+    boolean contains(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return find(keyBytes, hash(keyBytes)) >= 0;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores `value` under `key`, replacing any previous value.
+     */
+    void put(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] data = deflate(value);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            long offset = append(keyBytes, data.length, crc(data), data);
+            setIndex(keyBytes, hash(keyBytes), offset, RECORD_HEADER_SIZE + keyBytes.length + data.length);
+            writeHeader();
+            if (segmentLength > maxSizeBytes || segmentLength > MIN_COMPACTION_SIZE && liveBytes < segmentLength / 2)
+                compactLocked();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the values of which the key matches `predicate`.
+     */
+    void removeIf(Predicate<String> predicate) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = index.getLong(slotPosition(slot) + 8);
+                if (index.getLong(slotPosition(slot)) == 0 || offset == REMOVED)
+                    continue;
+                byte[] keyBytes = readKey(offset);
+                if (predicate.test(new String(keyBytes, StandardCharsets.UTF_8))) {
+                    append(keyBytes, TOMBSTONE, 0, new byte[0]);
+                    liveBytes -= recordSize(offset, keyBytes.length);
+                    index.putLong(slotPosition(slot) + 8, REMOVED);
+                    count--;
+                }
+            }
+            writeHeader();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all versions from the cache.
+     *
+     * @throws IOException if the files could not be truncated
+     */
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            segment.truncate(0);
+            segmentLength = 0;
+            createIndex(INITIAL_CAPACITY);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the segment file now, instead of waiting until it is needed.
+     *
+     * @throws IOException if the new files could not be written
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            compactLocked();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of versions in the cache
+     */
+    public int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size of the segment file, including garbage, in bytes
+     */
+    public long getSizeBytes() {
+        lock.readLock().lock();
+        try {
+            return segmentLength;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the index to disk and closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (segment == null)
+                return;
+            segment.force(false);
+            index.force();
+            indexChannel.close();
+            segment.close();
+            segment = null;
+            index = null;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (segment == null)
+            throw new IOException("Disk cache in " + directory + " is closed");
+    }
+
+    /*
+     * Segment file
+     */
+
+    private long append(byte[] keyBytes, int dataLength, int crc, byte[] data) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + data.length);
+        record.putInt(keyBytes.length).putInt(dataLength).putInt(crc).put(keyBytes).put(data);
+        record.flip();
+        long offset = segmentLength;
+        while (record.hasRemaining())
+            segmentLength += segment.write(record, segmentLength);
+        return offset;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (segment.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of " + directory.resolve(SEGMENT_FILE));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private byte[] readKey(long offset) throws IOException {
+        int keyLength = readFully(offset, 4).getInt(0);
+        return readFully(offset + RECORD_HEADER_SIZE, keyLength).array();
+    }
+
+    private long recordSize(long offset, int keyLength) throws IOException {
+        return RECORD_HEADER_SIZE + keyLength + readFully(offset + 4, 4).getInt(0);
+    }
+
+    /**
+     * Copies the live records to a new segment file, oldest first, and builds a new index for it. If the live records take more than three quarters of the
+     * maximum size, the oldest ones are left out.
+     */
+    private void compactLocked() throws IOException {
+        List<long[]> live = new ArrayList<>(count);
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = index.getLong(slotPosition(slot) + 8);
+            if (index.getLong(slotPosition(slot)) != 0 && offset != REMOVED)
+                live.add(new long[] { offset, index.getLong(slotPosition(slot)) });
+        }
+        live.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[] sizes = new long[live.size()];
+        long total = 0;
+        for (int i = 0; i < live.size(); i++) {
+            sizes[i] = recordSize(live.get(i)[0], readFully(live.get(i)[0], 4).getInt(0));
+            total += sizes[i];
+        }
+        int first = 0;
+        while (total > maxSizeBytes * 3 / 4 && first < live.size())
+            total -= sizes[first++];
+        log.debug("Compacting {}: {} of {} bytes live, dropping {} oldest versions", directory, total, segmentLength, first);
+
+        Path newSegmentFile = directory.resolve(SEGMENT_FILE + ".tmp");
+        long[][] newOffsets = new long[live.size() - first][];
+        try (FileChannel newSegment = FileChannel.open(newSegmentFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int i = first; i < live.size(); i++) {
+                long offset = live.get(i)[0];
+                long transferred = 0;
+                while (transferred < sizes[i])
+                    transferred += segment.transferTo(offset + transferred, sizes[i] - transferred, newSegment);
+                newOffsets[i - first] = new long[] { position, live.get(i)[1], sizes[i] };
+                position += sizes[i];
+            }
+            newSegment.force(false);
+        }
+        segment.close();
+        Files.move(newSegmentFile, directory.resolve(SEGMENT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segment = FileChannel.open(directory.resolve(SEGMENT_FILE), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentLength = segment.size();
+        createIndex(capacityFor(newOffsets.length));
+        for (long[] record : newOffsets)
+            insert(record[1], record[0]);
+        count = newOffsets.length;
+        used = count;
+        liveBytes = total;
+        writeHeader();
+    }
+
+    /*
+     * Index file
+     */
+
+    /**
+     * @return `false` if there is no valid index that matches the segment file
+     */
+    private boolean openIndex() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile) || Files.size(indexFile) < HEADER_SIZE)
+            return false;
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        capacity = index.getInt(H_CAPACITY);
+        if (index.getInt(H_MAGIC) != INDEX_MAGIC || index.getInt(H_FORMAT) != INDEX_FORMAT || index.getLong(H_SEGMENT_LENGTH) != segmentLength
+            || indexChannel.size() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            indexChannel.close();
+            return false;
+        }
+        count = index.getInt(H_COUNT);
+        used = index.getInt(H_USED);
+        liveBytes = index.getLong(H_LIVE_BYTES);
+        return true;
+    }
+
+    /**
+     * Scans the segment file and indexes the last record of every key. Stops at the first incomplete or corrupt record, and truncates the segment file
+     * there.
+     */
+    private void rebuildIndex() throws IOException {
+        Map<String, long[]> records = new LinkedHashMap<>();
+        long position = 0;
+        while (position + RECORD_HEADER_SIZE <= segmentLength) {
+            ByteBuffer header = readFully(position, RECORD_HEADER_SIZE);
+            int keyLength = header.getInt(0);
+            int dataLength = header.getInt(4);
+            long size = RECORD_HEADER_SIZE + (long) keyLength + Math.max(0, dataLength);
+            if (keyLength < 0 || dataLength < TOMBSTONE || position + size > segmentLength)
+                break;
+            byte[] keyBytes = readFully(position + RECORD_HEADER_SIZE, keyLength).array();
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (dataLength == TOMBSTONE)
+                records.remove(key);
+            else {
+                byte[] data = readFully(position + RECORD_HEADER_SIZE + keyLength, dataLength).array();
+                if (crc(data) != header.getInt(8))
+                    break;
+                records.remove(key);
+                records.put(key, new long[] { position, hash(keyBytes), size });
+            }
+            position += size;
+        }
+        if (position < segmentLength) {
+            log.warn("Discarding {} bytes at the end of {}", segmentLength - position, directory.resolve(SEGMENT_FILE));
+            segment.truncate(position);
+            segmentLength = position;
+        }
+        createIndex(capacityFor(records.size()));
+        for (long[] record : records.values()) {
+            insert(record[1], record[0]);
+            liveBytes += record[2];
+        }
+        count = records.size();
+        used = count;
+        writeHeader();
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = INITIAL_CAPACITY;
+        while (entries >= capacity * MAX_LOAD)
+            capacity *= 2;
+        return capacity;
+    }
+
+    /**
+     * Replaces the index by an empty one with `newCapacity` slots.
+     */
+    private void createIndex(int newCapacity) throws IOException {
+        if (indexChannel != null)
+            indexChannel.close();
+        Path indexFile = directory.resolve(INDEX_FILE);
+        Files.deleteIfExists(indexFile);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        count = 0;
+        used = 0;
+        liveBytes = 0;
+        index.putInt(H_MAGIC, INDEX_MAGIC);
+        index.putInt(H_FORMAT, INDEX_FORMAT);
+        index.putInt(H_CAPACITY, capacity);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        index.putInt(H_COUNT, count);
+        index.putInt(H_USED, used);
+        index.putLong(H_SEGMENT_LENGTH, segmentLength);
+        index.putLong(H_LIVE_BYTES, liveBytes);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return the slot of `keyBytes`, or -1 if it is not in the index
+     */
+    private int find(byte[] keyBytes, long hash) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = index.getLong(slotPosition(slot));
+            if (slotHash == 0)
+                return -1;
+            long offset = index.getLong(slotPosition(slot) + 8);
+            if (slotHash == hash && offset != REMOVED && Arrays.equals(keyBytes, readKey(offset)))
+                return slot;
+        }
+    }
+
+    private void setIndex(byte[] keyBytes, long hash, long offset, long size) throws IOException {
+        int slot = find(keyBytes, hash);
+        if (slot >= 0) {
+            long previous = index.getLong(slotPosition(slot) + 8);
+            liveBytes -= recordSize(previous, keyBytes.length);
+            index.putLong(slotPosition(slot) + 8, offset);
+        }
+        else {
+            if (used + 1 > capacity * MAX_LOAD)
+                growIndex();
+            insert(hash, offset);
+            count++;
+            used++;
+        }
+        liveBytes += size;
+    }
+
+    private void insert(long hash, long offset) {
+        int mask = capacity - 1;
+        int slot = (int) hash & mask;
+        while (index.getLong(slotPosition(slot)) != 0)
+            slot = (slot + 1) & mask;
+        index.putLong(slotPosition(slot), hash);
+        index.putLong(slotPosition(slot) + 8, offset);
+    }
+
+    /**
+     * Rebuilds the index with twice the capacity, leaving out removed entries.
+     */
+    private void growIndex() throws IOException {
+        List<long[]> entries = new ArrayList<>(count);
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = index.getLong(slotPosition(slot) + 8);
+            if (index.getLong(slotPosition(slot)) != 0 && offset != REMOVED)
+                entries.add(new long[] { index.getLong(slotPosition(slot)), offset });
+        }
+        int oldCount = count;
+        long oldLiveBytes = liveBytes;
+        createIndex(capacityFor(entries.size() * 2));
+        for (long[] entry : entries)
+            insert(entry[0], entry[1]);
+        count = oldCount;
+        used = oldCount;
+        liveBytes = oldLiveBytes;
+    }
+
+    /*
+     * Hashing, checksums and compression
+     */
+
+    /**
+     * 64-bit FNV-1a hash; never 0, as 0 marks an empty slot.
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] deflate(byte[] value) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, value.length / 8));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 8);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Truncated compressed record");
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed record", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.DataMessage;
+import nl.knaw.dans.lib.dataverse.model.dataverse.Dataverse;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link DataverseApi}. The endpoints that are not yet implemented in {@link DataverseApi}, such as facets, role assignments,
+ * metadata blocks, dataset creation and publication of the collection, are not available here either.
+ */
+public class DataverseAsyncApi extends AbstractAsyncApi {
+
+    private static final Logger log = LoggerFactory.getLogger(DataverseAsyncApi.class);
+    private final Path subPath;
+
+    protected DataverseAsyncApi(HttpAsyncClientWrapper httpClientWrapper, String alias) {
+        super(httpClientWrapper);
+        log.trace("ENTER");
+        this.subPath = Paths.get("api/dataverses/").resolve(alias + "/");
+    }
+
+    /**
+     * @see DataverseApi#create(String)
+     */
+    public CompletableFuture<DataverseHttpResponse<Dataverse>> create(String dataverse) {
+        log.trace("ENTER");
+        return httpClientWrapper.postJsonString(subPath, dataverse, new HashMap<>(), new HashMap<>(), Dataverse.class);
+    }
+
+    /**
+     * @see DataverseApi#create(Dataverse)
+     */
+    public CompletableFuture<DataverseHttpResponse<Dataverse>> create(Dataverse dataverse) {
+        log.trace("ENTER");
+        return httpClientWrapper.postModelObjectAsJson(subPath, dataverse, new HashMap<>(), new HashMap<>(), Dataverse.class);
+    }
+
+    /**
+     * @see DataverseApi#view()
+     */
+    public CompletableFuture<DataverseHttpResponse<Dataverse>> view() {
+        log.trace("ENTER");
+        return httpClientWrapper.get(subPath, Dataverse.class);
+    }
+
+    /**
+     * @see DataverseApi#delete()
+     */
+    public CompletableFuture<DataverseHttpResponse<DataMessage>> delete() {
+        log.trace("ENTER");
+        return httpClientWrapper.delete(subPath, DataMessage.class);
+    }
+
+    /**
+     * @see DataverseApi#getContents()
+     */
+    public CompletableFuture<DataverseHttpResponse<List<DataverseItem>>> getContents() {
+        log.trace("ENTER");
+        return httpClientWrapper.get(subPath.resolve("contents"), List.class, DataverseItem.class);
+    }
+
+    /**
+     * @see DataverseApi#getStorageSize()
+     */
+    public CompletableFuture<DataverseHttpResponse<DataMessage>> getStorageSize() {
+        log.trace("ENTER");
+        return httpClientWrapper.get(subPath.resolve("storagesize"), DataMessage.class);
+    }
+
+    /**
+     * @see DataverseApi#listRoles()
+     */
+    public CompletableFuture<DataverseHttpResponse<DataMessage>> listRoles() {
+        log.trace("ENTER");
+        return httpClientWrapper.get(subPath.resolve("roles"), DataMessage.class);
+    }
+}
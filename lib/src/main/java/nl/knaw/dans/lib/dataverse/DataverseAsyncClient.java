@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking counterpart of {@link DataverseClient}. Every call returns immediately with a `CompletableFuture` that is completed when the response has
+ * arrived. All requests are multiplexed over a small, fixed number of I/O threads (see {@link DataverseClientConfig#setIoThreadCount(int)}), so that many
+ * requests can be in flight without dedicating a thread to each of them. The responses are deserialized on a separate response executor, so that the
+ * I/O threads only move bytes.
+ *
+ * Asynchronous variants are available of the endpoints that are implemented in {@link DataverseApi}, {@link DatasetApi} and {@link WorkflowsApi}, with
+ * the exception of the streaming and file upload methods:
+ *
+ * - {@link DataverseAsyncApi}: `create`, `view`, `delete`, `getContents`, `getStorageSize` and `listRoles`;
+ * - {@link DatasetAsyncApi}: `listVersions`, `getVersion`, `listFiles`, `publish` and `getLocks`;
+ * - {@link WorkflowsAsyncApi}: `resume`.
+ *
+ * The other methods of {@link DataverseApi} are not implemented yet, and have no asynchronous variant either.
+ *
+ * If the server returns a status other than 2xx, the future is completed exceptionally with a {@link DataverseException}. Cancelling a future aborts its
+ * request.
+ *
+ * The client must be closed after use, to stop its I/O threads.
+ */
+public class DataverseAsyncClient implements Closeable {
+
+    private final HttpAsyncClientWrapper httpClientWrapper;
+    private final CloseableHttpAsyncClient httpClient;
+    private final boolean ownsHttpClient;
+    private final ExecutorService ownResponseExecutor;
+
+    /**
+     * Creates a DataverseAsyncClient. The connection limits and the number of I/O threads are taken from `config`.
+     *
+     * @param config configuration for this DataverseAsyncClient
+     */
+    public DataverseAsyncClient(DataverseClientConfig config) {
+        this(config, createHttpClient(config), null, null, true);
+    }
+
+    /**
+     * Creates a DataverseAsyncClient with a custom HttpAsyncClient. The client is started if it is not already running. It is not closed when this
+     * DataverseAsyncClient is closed, as its life cycle is up to the caller.
+     *
+     * @param config       configuration for this DataverseAsyncClient
+     * @param httpClient   the `org.apache.http.impl.nio.client.CloseableHttpAsyncClient` to use when interacting with Dataverse
+     * @param objectMapper a custom object mapper, or `null` to use a default one
+     */
+    public DataverseAsyncClient(DataverseClientConfig config, CloseableHttpAsyncClient httpClient, ObjectMapper objectMapper) {
+        this(config, httpClient, objectMapper, null, false);
+    }
+
+    /**
+     * Like {@link #DataverseAsyncClient(DataverseClientConfig, CloseableHttpAsyncClient, ObjectMapper)}, with the executor that the responses are
+     * deserialized on. The executor is not shut down when this DataverseAsyncClient is closed.
+     *
+     * @param config           configuration for this DataverseAsyncClient
+     * @param httpClient       the `org.apache.http.impl.nio.client.CloseableHttpAsyncClient` to use when interacting with Dataverse
+     * @param objectMapper     a custom object mapper, or `null` to use a default one
+     * @param responseExecutor the executor to deserialize the responses on
+     */
+    public DataverseAsyncClient(DataverseClientConfig config, CloseableHttpAsyncClient httpClient, ObjectMapper objectMapper, Executor responseExecutor) {
+        this(config, httpClient, objectMapper, responseExecutor, false);
+    }
+
+    private DataverseAsyncClient(DataverseClientConfig config, CloseableHttpAsyncClient httpClient, ObjectMapper objectMapper, Executor responseExecutor,
+        boolean ownsHttpClient) {
+        this.httpClient = httpClient;
+        this.ownsHttpClient = ownsHttpClient;
+        this.ownResponseExecutor = responseExecutor == null ? createResponseExecutor() : null;
+        if (!httpClient.isRunning())
+            httpClient.start();
+        this.httpClientWrapper = new HttpAsyncClientWrapper(config, httpClient, DataverseClient.configureMapper(objectMapper),
+            responseExecutor == null ? ownResponseExecutor : responseExecutor);
+    }
+
+    public WorkflowsAsyncApi workflows() {
+        return new WorkflowsAsyncApi(httpClientWrapper);
+    }
+
+    public DatasetAsyncApi dataset(String pid) {
+        return new DatasetAsyncApi(httpClientWrapper, pid, true);
+    }
+
+    public DataverseAsyncApi dataverse(String alias) {
+        return new DataverseAsyncApi(httpClientWrapper, alias);
+    }
+
+    /**
+     * Closes the HttpAsyncClient, if it was created by this client, and stops the response executor, if it was not passed in by the caller. Requests that are
+     * still in flight may then fail.
+     *
+     * @throws IOException if the HttpAsyncClient could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (ownsHttpClient)
+                httpClient.close();
+        }
+        finally {
+            if (ownResponseExecutor != null)
+                ownResponseExecutor.shutdown();
+        }
+    }
+
+    private static ExecutorService createResponseExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "dataverse-async-response-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static CloseableHttpAsyncClient createHttpClient(DataverseClientConfig config) {
+        return HttpAsyncClients.custom()
+            .setMaxConnTotal(config.getMaxConnectionsTotal())
+            .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+            .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(config.getIoThreadCount())
+                .build())
+            .build();
+    }
+}
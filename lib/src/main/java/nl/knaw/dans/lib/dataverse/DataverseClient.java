@@ -20,32 +20,147 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseItem;
 import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Object that lets your code talk to a Dataverse server.
  */
-public class DataverseClient {
+public class DataverseClient implements Closeable {
 
     private final HttpClientWrapper httpClientWrapper;
     private final ObjectMapper mapper;
+    private final HttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CircuitBreaker circuitBreaker;
+    private final int batchParallelism;
 
     /**
-     * Creates a DataverseClient.
+     * Creates a DataverseClient. The underlying HttpClient uses a connection pool that is configured with the pool settings in `config`.
      *
      * @param config configuration for this DataverseClient
      */
     public DataverseClient(DataverseClientConfig config) {
-        this(config, HttpClients.createDefault(), null);
+        this(config, createConnectionManager(config));
+    }
+
+    private DataverseClient(DataverseClientConfig config, PoolingHttpClientConnectionManager connectionManager) {
+        this(config, createHttpClient(config, connectionManager), null, connectionManager);
     }
 
     /**
-     * Creates a DataverseClient with a custom HttpClient.
+     * Creates a DataverseClient with a custom HttpClient. The pool settings in `config` are ignored, as the connection management of `httpClient` is up to
+     * the caller.
      *
      * @param config     configuration for this DataverseClient
      * @param httpClient the `org.apache.http.client.HttpClient` to use when interacting with Dataverse
      */
     public DataverseClient(DataverseClientConfig config, HttpClient httpClient, ObjectMapper objectMapper) {
+        this(config, httpClient, objectMapper, null);
+    }
+
+    private DataverseClient(DataverseClientConfig config, HttpClient httpClient, ObjectMapper objectMapper, PoolingHttpClientConnectionManager connectionManager) {
+        this.httpClient = httpClient;
+        this.connectionManager = connectionManager;
+        this.circuitBreaker = config.getCircuitBreaker();
+        this.batchParallelism = config.getMaxConnectionsPerRoute();
+        this.mapper = configureMapper(objectMapper);
+        this.httpClientWrapper = new HttpClientWrapper(config, httpClient, mapper);
+    }
+
+    public WorkflowsApi workflows() {
+        return new WorkflowsApi(httpClientWrapper);
+    }
+
+    public DatasetApi dataset(String pid) {
+        return new DatasetApi(httpClientWrapper, pid, true);
+    }
+
+    /**
+     * Returns a batch for requesting the same information for many datasets concurrently. The number of requests in flight is limited to the maximum number
+     * of pooled connections per route, see {@link DataverseClientConfig#setMaxConnectionsPerRoute(int)}.
+     *
+     * @param pids the persistent identifiers of the datasets
+     * @return a batch for the datasets
+     */
+    public DatasetBatch datasets(Collection<String> pids) {
+        return datasets(pids, batchParallelism);
+    }
+
+    /**
+     * Like {@link #datasets(Collection)}, with an explicit limit on the number of requests in flight.
+     *
+     * @param pids        the persistent identifiers of the datasets
+     * @param parallelism the maximum number of requests in flight
+     * @return a batch for the datasets
+     */
+    public DatasetBatch datasets(Collection<String> pids, int parallelism) {
+        return new DatasetBatch(this, pids, parallelism);
+    }
+
+    public DataverseApi dataverse(String alias) {
+        return new DataverseApi(httpClientWrapper, alias);
+    }
+
+    public FileApi file(String pid) {
+        return new FileApi(httpClientWrapper, pid, true);
+    }
+
+    public FileApi file(int id) {
+        return new FileApi(httpClientWrapper, Integer.toString(id), false);
+    }
+
+    /**
+     * Returns the statistics of the connection pool, i.e. the number of leased, available and pending connections. Pending connections are requests that
+     * are waiting for a connection to become available, so a non-zero value indicates that the pool is saturated.
+     *
+     * @return the pool statistics, or `null` if this client was created with a custom HttpClient
+     */
+    public PoolStats getPoolStats() {
+        if (connectionManager == null)
+            return null;
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Returns the state of the circuit breaker, so that callers can stop submitting work while the Dataverse server is failing. Listeners for state changes
+     * can be added to the breaker itself, see {@link #getCircuitBreaker()}.
+     *
+     * @return the state of the circuit breaker, or `CLOSED` if none is configured
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        if (circuitBreaker == null)
+            return CircuitBreaker.State.CLOSED;
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * @return the circuit breaker configured for this client, or `null` if there is none
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Closes the connection pool, if it was created by this client. A custom HttpClient passed in by the caller is not closed.
+     *
+     * @throws IOException if the HttpClient could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (connectionManager != null && httpClient instanceof Closeable)
+            ((Closeable) httpClient).close();
+    }
+
+    static ObjectMapper configureMapper(ObjectMapper objectMapper) {
+        ObjectMapper mapper;
         if (objectMapper == null)
             mapper = new ObjectMapper();
         else
@@ -57,19 +172,26 @@ public class DataverseClient {
         module.addDeserializer(MetadataField.class, new MetadataFieldDeserializer());
         module.addDeserializer(DataverseItem.class, new DataverseItemDeserializer());
         mapper.registerModule(module);
-        this.httpClientWrapper = new HttpClientWrapper(config, httpClient, mapper);
+        return mapper;
     }
 
-    public WorkflowsApi workflows() {
-        return new WorkflowsApi(httpClientWrapper);
+    private static PoolingHttpClientConnectionManager createConnectionManager(DataverseClientConfig config) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+            config.getConnectionTimeToLive().toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(config.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) config.getValidateAfterInactivity().toMillis());
+        return connectionManager;
     }
 
-    public DatasetApi dataset(String pid) {
-        return new DatasetApi(httpClientWrapper, pid, true);
+    private static HttpClient createHttpClient(DataverseClientConfig config, PoolingHttpClientConnectionManager connectionManager) {
+        // Compression is negotiated by the HttpClientWrapper, so that it can be switched off and the compressed sizes can be measured. Retries are left to
+        // the RetryPolicy, so that every attempt is logged, reported to the metrics and seen by the circuit breaker
+        HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connectionManager).disableContentCompression().disableAutomaticRetries();
+        if (!config.getConnectionTimeToLive().isZero())
+            builder.evictExpiredConnections();
+        if (!config.getMaxIdleTime().isZero())
+            builder.evictIdleConnections(config.getMaxIdleTime().toMillis(), TimeUnit.MILLISECONDS);
+        return builder.build();
     }
-
-    public DataverseApi dataverse(String alias) {
-        return new DataverseApi(httpClientWrapper, alias);
-    }
-
 }
@@ -16,11 +16,42 @@
 package nl.knaw.dans.lib.dataverse;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class DataverseClientConfig {
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final Duration DEFAULT_MAX_IDLE_TIME = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_VALIDATE_AFTER_INACTIVITY = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_CONNECTION_TIME_TO_LIVE = Duration.ZERO;
+    public static final int DEFAULT_IO_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 16 * 1024;
+
     private final URI baseUrl;
     private final String apiToken;
 
+    private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private Duration maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    private Duration validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    private Duration connectionTimeToLive = DEFAULT_CONNECTION_TIME_TO_LIVE;
+    private int ioThreadCount = DEFAULT_IO_THREAD_COUNT;
+    private boolean streamingResponses = false;
+    private boolean requestCoalescing = false;
+    private boolean responseCompression = true;
+    private Set<String> requestCompressionEndpoints = Collections.emptySet();
+    private long requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+    private DataverseMetrics metrics = DataverseMetrics.NOOP;
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private RequestLimiter requestLimiter;
+    private CircuitBreaker circuitBreaker;
+    private DataverseResponseCache responseCache;
+    private DatasetVersionCache datasetVersionCache;
+
     /**
      * Configuration data for the {@link DataverseClient}.
      *
@@ -39,4 +70,212 @@ public class DataverseClientConfig {
     public String getApiToken() {
         return apiToken;
     }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    /**
+     * @param maxConnectionsTotal the maximum number of pooled connections, over all routes
+     */
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute the maximum number of pooled connections to a single route, i.e. to the Dataverse server
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Duration getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime the time after which idle connections are evicted from the pool; zero disables eviction of idle connections
+     */
+    public void setMaxIdleTime(Duration maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public Duration getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * @param validateAfterInactivity the period of inactivity after which a pooled connection is checked for staleness before it is leased again; zero or
+     *                                negative disables the check
+     */
+    public void setValidateAfterInactivity(Duration validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public Duration getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    /**
+     * @param connectionTimeToLive the maximum lifetime of a pooled connection, regardless of its activity; zero means unlimited
+     */
+    public void setConnectionTimeToLive(Duration connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    /**
+     * @param ioThreadCount the number of I/O dispatch threads used by the {@link DataverseAsyncClient}; ignored by the {@link DataverseClient}
+     */
+    public void setIoThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    public boolean isStreamingResponses() {
+        return streamingResponses;
+    }
+
+    /**
+     * In streaming mode the JSON in a response body is deserialized straight from the network stream when the response is received, instead of first being
+     * read into a String. This roughly halves the peak memory use for large responses. The raw body is then not available:
+     * {@link DataverseResponse#getEnvelopeAsString()} and {@link DataverseResponse#getEnvelopeAsJson()} throw an `IllegalStateException`.
+     *
+     * @param streamingResponses whether to enable streaming mode
+     */
+    public void setStreamingResponses(boolean streamingResponses) {
+        this.streamingResponses = streamingResponses;
+    }
+
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * With request coalescing, concurrent GET requests for the same URI with the same API token share one request to the server. A request that arrives
+     * while an identical one is in flight waits for it and receives the same response object, so the deserialized data is shared between the callers and
+     * must not be modified by them. This protects the server against bursts of identical requests, e.g. for a popular dataset.
+     *
+     * @param requestCoalescing whether to enable request coalescing; ignored by the {@link DataverseAsyncClient}
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    /**
+     * With response compression, requests carry an `Accept-Encoding: gzip, deflate` header, and compressed responses are decompressed while they are read.
+     * JSON responses, such as dataset versions, typically shrink by a factor of ten or more. The sizes reported to the metrics are those of the compressed
+     * bodies. Requests for a byte range of a file are never compressed.
+     *
+     * @param responseCompression whether to ask for compressed responses; `true` by default
+     */
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    public Set<String> getRequestCompressionEndpoints() {
+        return requestCompressionEndpoints;
+    }
+
+    /**
+     * Sets the endpoints to which large JSON request bodies are sent gzip-compressed, with a `Content-Encoding: gzip` header. Only use this for endpoints
+     * of which the server is known to decompress request bodies, as Dataverse does not do so by itself; it usually requires a reverse proxy that
+     * decompresses them. Endpoints are given as template prefixes, in which `*` matches any single segment, e.g. <code>api/datasets/&#42;/versions</code>.
+     *
+     * @param requestCompressionEndpoints the endpoint prefixes; none by default
+     */
+    public void setRequestCompressionEndpoints(Collection<String> requestCompressionEndpoints) {
+        this.requestCompressionEndpoints = Collections.unmodifiableSet(requestCompressionEndpoints.stream().map(Endpoints::stripSlashes).collect(Collectors.toSet()));
+    }
+
+    public long getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * @param requestCompressionThreshold the minimum size in bytes of a request body to compress, see {@link #setRequestCompressionEndpoints(Collection)}
+     */
+    public void setRequestCompressionThreshold(long requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    public DataverseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics the metrics implementation to report requests and response parsing to; defaults to {@link DataverseMetrics#NOOP}
+     */
+    public void setMetrics(DataverseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy the policy for retrying requests that failed because of a transient problem; use {@link RetryPolicy#none()} to disable retrying;
+     *                    ignored by the {@link DataverseAsyncClient}
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RequestLimiter getRequestLimiter() {
+        return requestLimiter;
+    }
+
+    /**
+     * @param requestLimiter the limiter for the rate and concurrency of requests, or `null` (the default) for no limits; ignored by the
+     *                       {@link DataverseAsyncClient}
+     */
+    public void setRequestLimiter(RequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param circuitBreaker the circuit breaker that stops requests to a failing server, or `null` (the default) for none; ignored by the
+     *                       {@link DataverseAsyncClient}
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public DataverseResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @param responseCache the cache for the responses to GET requests, or `null` (the default) for no caching; ignored by the {@link DataverseAsyncClient}
+     */
+    public void setResponseCache(DataverseResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public DatasetVersionCache getDatasetVersionCache() {
+        return datasetVersionCache;
+    }
+
+    /**
+     * @param datasetVersionCache the cache for deserialized published dataset versions, or `null` (the default) for no caching; ignored by the
+     *                            {@link DataverseAsyncClient}
+     */
+    public void setDatasetVersionCache(DatasetVersionCache datasetVersionCache) {
+        this.datasetVersionCache = datasetVersionCache;
+    }
 }
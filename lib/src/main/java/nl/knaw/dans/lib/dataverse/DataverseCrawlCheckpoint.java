@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The progress of a {@link DataverseCrawler}, from which a later crawl can be resumed. It is a plain bean, so it can be persisted with the object mapper of
+ * the application.
+ */
+public class DataverseCrawlCheckpoint {
+    private Set<String> pendingDataverses = new LinkedHashSet<>();
+    private Set<String> visitedDataverses = new LinkedHashSet<>();
+    private Set<Integer> seenDatasets = new LinkedHashSet<>();
+
+    public DataverseCrawlCheckpoint() {
+    }
+
+    /**
+     * @param rootAlias the alias of the dataverse collection to start crawling from
+     */
+    public DataverseCrawlCheckpoint(String rootAlias) {
+        pendingDataverses.add(rootAlias);
+    }
+
+    /**
+     * @return the aliases or ids of the dataverse collections of which the contents still have to be retrieved
+     */
+    public Set<String> getPendingDataverses() {
+        return pendingDataverses;
+    }
+
+    public void setPendingDataverses(Set<String> pendingDataverses) {
+        this.pendingDataverses = pendingDataverses;
+    }
+
+    /**
+     * @return the aliases or ids of the dataverse collections of which the contents were retrieved
+     */
+    public Set<String> getVisitedDataverses() {
+        return visitedDataverses;
+    }
+
+    public void setVisitedDataverses(Set<String> visitedDataverses) {
+        this.visitedDataverses = visitedDataverses;
+    }
+
+    /**
+     * @return the ids of the datasets that were passed on to the consumer
+     */
+    public Set<Integer> getSeenDatasets() {
+        return seenDatasets;
+    }
+
+    public void setSeenDatasets(Set<Integer> seenDatasets) {
+        this.seenDatasets = seenDatasets;
+    }
+
+    /**
+     * @return whether the crawl is complete
+     */
+    public boolean isDone() {
+        return pendingDataverses.isEmpty();
+    }
+}
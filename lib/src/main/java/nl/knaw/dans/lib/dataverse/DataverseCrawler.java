@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseDatasetItem;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseItem;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseSubverseItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks the tree of dataverse collections below a root collection and reports the datasets found in it. The contents of up to `parallelism` collections
+ * are retrieved at the same time. Datasets are passed on as soon as they are found, so their order is not defined; a dataset that is linked into more than one
+ * collection is passed on only once.
+ *
+ * The progress of the crawl can be saved at any time with {@link #getCheckpoint()} and a new crawler can resume from it. Collections whose contents were
+ * being retrieved when the checkpoint was taken are retrieved again, so the datasets in them that were passed on after the checkpoint was taken are passed
+ * on again after resuming.
+ *
+ * A crawler can be used for only one crawl.
+ */
+public class DataverseCrawler {
+    private static final Logger log = LoggerFactory.getLogger(DataverseCrawler.class);
+    private static final int STREAM_BUFFER_SIZE = 1000;
+    private static final Object END_OF_STREAM = new Object();
+
+    interface ContentsFetcher {
+        List<DataverseItem> getContents(String aliasOrId) throws IOException, DataverseException;
+    }
+
+    private final ContentsFetcher fetcher;
+    private final int parallelism;
+
+    private final Set<String> pending;
+    private final Set<String> visited;
+    private final Set<Integer> seenDatasets;
+    // Datasets that are about to be passed on, or have been; these are not saved in a checkpoint until they have been passed on
+    private final Set<Integer> claimedDatasets;
+    private final Object consumerLock = new Object();
+    private boolean started;
+
+    /**
+     * @param client      the client to retrieve the contents of the collections with
+     * @param rootAlias   the alias of the collection to start from
+     * @param parallelism the maximum number of collections of which the contents are retrieved at the same time
+     */
+    public DataverseCrawler(DataverseClient client, String rootAlias, int parallelism) {
+        this(client, new DataverseCrawlCheckpoint(rootAlias), parallelism);
+    }
+
+    /**
+     * @param client      the client to retrieve the contents of the collections with
+     * @param checkpoint  the checkpoint to resume from
+     * @param parallelism the maximum number of collections of which the contents are retrieved at the same time
+     */
+    public DataverseCrawler(DataverseClient client, DataverseCrawlCheckpoint checkpoint, int parallelism) {
+        this(aliasOrId -> client.dataverse(aliasOrId).getContents().getData(), checkpoint, parallelism);
+    }
+
+    DataverseCrawler(ContentsFetcher fetcher, DataverseCrawlCheckpoint checkpoint, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.fetcher = fetcher;
+        this.parallelism = parallelism;
+        this.pending = new LinkedHashSet<>(checkpoint.getPendingDataverses());
+        this.visited = new HashSet<>(checkpoint.getVisitedDataverses());
+        this.seenDatasets = new LinkedHashSet<>(checkpoint.getSeenDatasets());
+        this.claimedDatasets = new HashSet<>(seenDatasets);
+    }
+
+    /**
+     * Runs the crawl, blocking until it is complete. Calls of `consumer` are never concurrent, so it does not have to be thread-safe.
+     *
+     * @param consumer receives the datasets found
+     * @throws IOException         if the contents of a collection could not be retrieved; the crawl is then aborted
+     * @throws DataverseException  if Dataverse returned an error for a collection; the crawl is then aborted
+     */
+    public void crawl(Consumer<? super DataverseDatasetItem> consumer) throws IOException, DataverseException {
+        List<String> roots;
+        synchronized (this) {
+            if (started)
+                throw new IllegalStateException("A DataverseCrawler can be used for only one crawl");
+            started = true;
+            roots = new ArrayList<>(pending);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new CrawlerThreadFactory());
+        CompletionService<List<String>> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            int outstanding = 0;
+            for (String root : roots) {
+                completionService.submit(() -> visit(root, consumer));
+                outstanding++;
+            }
+            while (outstanding > 0) {
+                Future<List<String>> done = completionService.take();
+                outstanding--;
+                for (String child : done.get()) {
+                    completionService.submit(() -> visit(child, consumer));
+                    outstanding++;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while crawling");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof DataverseException)
+                throw (DataverseException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the crawl in the background and returns the datasets found as a stream. The crawl is throttled when the datasets are found faster than the stream
+     * is consumed. Closing the stream aborts the crawl. If the crawl fails, the stream throws a `CompletionException` with the `IOException` or
+     * `DataverseException` as its cause.
+     *
+     * @return the datasets found
+     */
+    public Stream<DataverseDatasetItem> stream() {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(STREAM_BUFFER_SIZE);
+        Thread crawlThread = new CrawlerThreadFactory().newThread(() -> {
+            Object last = END_OF_STREAM;
+            try {
+                crawl(item -> {
+                    try {
+                        queue.put(item);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Stream was closed");
+                    }
+                });
+            }
+            catch (IOException | DataverseException | RuntimeException e) {
+                last = new CompletionException(e);
+            }
+            try {
+                queue.put(last);
+            }
+            catch (InterruptedException e) {
+                // The stream was closed, so nobody is waiting for the end
+            }
+        });
+        crawlThread.start();
+        Spliterator<DataverseDatasetItem> spliterator = new Spliterators.AbstractSpliterator<DataverseDatasetItem>(Long.MAX_VALUE, Spliterator.NONNULL) {
+            private boolean ended;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super DataverseDatasetItem> action) {
+                if (ended)
+                    return false;
+                Object next;
+                try {
+                    next = queue.take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(new InterruptedIOException("Interrupted while waiting for the crawler"));
+                }
+                if (next == END_OF_STREAM) {
+                    ended = true;
+                    return false;
+                }
+                if (next instanceof CompletionException) {
+                    ended = true;
+                    throw (CompletionException) next;
+                }
+                action.accept((DataverseDatasetItem) next);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(crawlThread::interrupt);
+    }
+
+    /**
+     * Returns a snapshot of the progress of the crawl. It can be taken while the crawl is running.
+     *
+     * @return the checkpoint
+     */
+    public DataverseCrawlCheckpoint getCheckpoint() {
+        DataverseCrawlCheckpoint checkpoint = new DataverseCrawlCheckpoint();
+        synchronized (this) {
+            checkpoint.setPendingDataverses(new LinkedHashSet<>(pending));
+            checkpoint.setVisitedDataverses(new LinkedHashSet<>(visited));
+            checkpoint.setSeenDatasets(new LinkedHashSet<>(seenDatasets));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Retrieves the contents of one collection and passes on the datasets in it.
+     *
+     * @return the child collections that were not visited or pending yet
+     */
+    private List<String> visit(String aliasOrId, Consumer<? super DataverseDatasetItem> consumer) throws IOException, DataverseException {
+        log.debug("Retrieving contents of dataverse {}", aliasOrId);
+        List<DataverseItem> items = fetcher.getContents(aliasOrId);
+        List<String> children = new ArrayList<>();
+        for (DataverseItem item : items) {
+            if (item instanceof DataverseDatasetItem) {
+                int id = item.getId();
+                synchronized (this) {
+                    if (!claimedDatasets.add(id))
+                        continue;
+                }
+                synchronized (consumerLock) {
+                    consumer.accept((DataverseDatasetItem) item);
+                }
+                synchronized (this) {
+                    seenDatasets.add(id);
+                }
+            }
+            else if (item instanceof DataverseSubverseItem) {
+                String child = Integer.toString(item.getId());
+                synchronized (this) {
+                    if (!visited.contains(child) && pending.add(child))
+                        children.add(child);
+                }
+            }
+        }
+        synchronized (this) {
+            pending.remove(aliasOrId);
+            visited.add(aliasOrId);
+        }
+        return children;
+    }
+
+    private static class CrawlerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "dataverse-crawler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
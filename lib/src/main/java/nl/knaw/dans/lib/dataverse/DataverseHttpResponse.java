@@ -16,10 +16,12 @@
 package nl.knaw.dans.lib.dataverse;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.http.HttpResponse;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 public class DataverseHttpResponse<D> extends DataverseResponse<D> {
     private final HttpResponse httpResponse;
@@ -31,6 +33,38 @@ public class DataverseHttpResponse<D> extends DataverseResponse<D> {
         this.httpResponse = httpResponse;
     }
 
+    protected DataverseHttpResponse(HttpResponse httpResponse, ObjectMapper customMapper, ObjectReader reader) throws IOException {
+        this(httpResponse, customMapper, reader, DataverseMetrics.NOOP, null);
+    }
+
+    DataverseHttpResponse(HttpResponse httpResponse, ObjectMapper customMapper, ObjectReader reader, DataverseMetrics metrics, String endpoint) throws IOException {
+        super(EntityUtils.toString(httpResponse.getEntity()), customMapper, reader, metrics, endpoint);
+        this.httpResponse = httpResponse;
+    }
+
+    /**
+     * Creates a response that is deserialized straight from the content stream of the entity. See {@link DataverseClientConfig#setStreamingResponses(boolean)}.
+     */
+    protected DataverseHttpResponse(HttpResponse httpResponse, InputStream body, ObjectMapper customMapper, ObjectReader reader) throws IOException {
+        this(httpResponse, body, customMapper, reader, DataverseMetrics.NOOP, null);
+    }
+
+    DataverseHttpResponse(HttpResponse httpResponse, InputStream body, ObjectMapper customMapper, ObjectReader reader, DataverseMetrics metrics, String endpoint)
+        throws IOException {
+        super(body, customMapper, reader, metrics, endpoint);
+        this.httpResponse = httpResponse;
+    }
+
+    /**
+     * Creates a response that is deserialized straight from the content stream of the entity. See {@link DataverseClientConfig#setStreamingResponses(boolean)}.
+     */
+    protected DataverseHttpResponse(HttpResponse httpResponse, InputStream body, ObjectMapper customMapper, Class<?>... dataClass) throws IOException {
+        super(body, customMapper, dataClass);
+        if (dataClass.length > 2)
+            throw new IllegalArgumentException("Currently no more than one nested parameter type supported");
+        this.httpResponse = httpResponse;
+    }
+
     public HttpResponse getHttpResponse() {
         return httpResponse;
     }
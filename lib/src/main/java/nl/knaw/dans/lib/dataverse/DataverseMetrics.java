@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+/**
+ * Service provider interface for collecting metrics about the interaction with Dataverse. The client reports every request and the parsing of every response
+ * to the implementation configured with {@link DataverseClientConfig#setMetrics(DataverseMetrics)}. All methods have an empty default implementation, so that
+ * an implementation only needs to override the events it is interested in.
+ *
+ * Endpoints are reported as templates, in which identifiers and version numbers are replaced by placeholders, e.g. `api/dataverses/{id}/contents`. This keeps
+ * the number of distinct endpoints small enough to be used as a metric tag.
+ *
+ * Implementations must be thread-safe.
+ *
+ * @see MicrometerDataverseMetrics
+ */
+public interface DataverseMetrics {
+
+    /**
+     * Metrics implementation that ignores all events. This is the default.
+     */
+    DataverseMetrics NOOP = new DataverseMetrics() {
+    };
+
+    /**
+     * Called when a request is about to be sent.
+     *
+     * @param method   the HTTP method
+     * @param endpoint the endpoint template
+     */
+    default void requestStarted(String method, String endpoint) {
+    }
+
+    /**
+     * Called when a response was received and its body was read, regardless of the status code.
+     *
+     * @param method        the HTTP method
+     * @param endpoint      the endpoint template
+     * @param status        the HTTP status code
+     * @param durationNanos the time between sending the request and reading the complete response
+     * @param bytesSent     the size of the request body, or -1 if unknown
+     * @param bytesReceived the number of bytes of the response body that were read
+     */
+    default void requestCompleted(String method, String endpoint, int status, long durationNanos, long bytesSent, long bytesReceived) {
+    }
+
+    /**
+     * Called when a request failed without a response, e.g. because of a connection error or timeout.
+     *
+     * @param method        the HTTP method
+     * @param endpoint      the endpoint template
+     * @param cause         the exception that caused the failure
+     * @param durationNanos the time between sending the request and the failure
+     */
+    default void requestFailed(String method, String endpoint, Throwable cause, long durationNanos) {
+    }
+
+    /**
+     * Called when the envelope of a response was deserialized.
+     *
+     * @param endpoint      the endpoint template
+     * @param durationNanos the time it took to deserialize the envelope
+     */
+    default void responseParsed(String endpoint, long durationNanos) {
+    }
+
+    /**
+     * Called when a failed request is about to be retried, see {@link RetryPolicy}.
+     *
+     * @param method      the HTTP method
+     * @param endpoint    the endpoint template
+     * @param attempt     the number of the attempt that failed, starting at 1
+     * @param reason      the status code of the failed attempt, or the simple class name of the exception that caused it
+     * @param delayMillis the time that will be waited before the next attempt
+     */
+    default void requestRetried(String method, String endpoint, int attempt, String reason, long delayMillis) {
+    }
+
+    /**
+     * Called when a request may be sent after waiting for the {@link RequestLimiter}. Not called if no limiter is configured.
+     *
+     * @param method     the HTTP method
+     * @param endpoint   the endpoint template
+     * @param queueNanos the time the request waited
+     */
+    default void requestQueued(String method, String endpoint, long queueNanos) {
+    }
+
+    /**
+     * Called when a GET request was looked up in the {@link DataverseResponseCache}. Not called if no cache is configured or the endpoint is excluded from caching.
+     *
+     * @param endpoint the endpoint template
+     * @param outcome  `hit` if a fresh response was found, `revalidated` if a stale response was confirmed by the server with a `304 Not Modified`, or
+     *                 `miss` if the response had to be fetched
+     */
+    default void cacheLookup(String endpoint, String outcome) {
+    }
+
+    /**
+     * Called when a GET request was not sent, because an identical request was already in flight and its response is shared. Only called if request
+     * coalescing is enabled, see {@link DataverseClientConfig#setRequestCoalescing(boolean)}.
+     *
+     * @param endpoint the endpoint template
+     */
+    default void requestCoalesced(String endpoint) {
+    }
+}
@@ -15,15 +15,18 @@
  */
 package nl.knaw.dans.lib.dataverse;
 
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.ObjectReader;
 import nl.knaw.dans.lib.dataverse.model.DataverseEnvelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Response from Dataverse. A typical response from Dataverse is a JSON document with the following format:
@@ -47,37 +50,114 @@ public class DataverseResponse<D> {
     private static final Logger log = LoggerFactory.getLogger(DataverseResponse.class);
     private final ObjectMapper mapper;
 
+    private final ObjectReader reader;
+    private final DataverseMetrics metrics;
+    private final String endpoint;
+    // Not a monitor, so that a virtual thread waiting for another thread's deserialization does not pin its carrier thread
+    private final Lock lock = new ReentrantLock();
+
     private final String bodyText;
-    private final JavaType dataType;
+    private volatile DataverseEnvelope<D> envelope;
+    private volatile JsonNode envelopeAsJson;
 
     protected DataverseResponse(String bodyText, ObjectMapper mapper, Class<?>... dataClass) {
+        this(bodyText, mapper, mapper.readerFor(EnvelopeReaders.constructEnvelopeType(mapper, dataClass)));
+    }
+
+    /**
+     * @param bodyText the body of the response
+     * @param mapper   the object mapper
+     * @param reader   a reader for the envelope type, see {@link EnvelopeReaders}
+     */
+    protected DataverseResponse(String bodyText, ObjectMapper mapper, ObjectReader reader) {
+        this(bodyText, mapper, reader, DataverseMetrics.NOOP, null);
+    }
+
+    DataverseResponse(String bodyText, ObjectMapper mapper, ObjectReader reader, DataverseMetrics metrics, String endpoint) {
         log.trace("ENTER");
         log.trace(bodyText);
         this.bodyText = bodyText;
         this.mapper = mapper;
-        TypeFactory typeFactory = mapper.getTypeFactory();
-        if (dataClass.length == 2) {
-            JavaType inner = typeFactory.constructParametricType(dataClass[0], dataClass[1]);
-            this.dataType = typeFactory.constructParametricType(DataverseEnvelope.class, inner);
-        }
-        else {
-            this.dataType = typeFactory.constructParametricType(DataverseEnvelope.class, dataClass[0]);
+        this.reader = reader;
+        this.metrics = metrics;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Creates a response by deserializing the envelope straight from `body`, without first reading it into a String. The stream is read completely and
+     * closed before the constructor returns.
+     *
+     * @param body      the stream to read the body from
+     * @param mapper    the object mapper
+     * @param dataClass the class of the data, or the container class and element class
+     * @throws IOException if body cannot be processed properly as JSON
+     */
+    protected DataverseResponse(InputStream body, ObjectMapper mapper, Class<?>... dataClass) throws IOException {
+        this(body, mapper, mapper.readerFor(EnvelopeReaders.constructEnvelopeType(mapper, dataClass)));
+    }
+
+    /**
+     * Streaming variant of {@link #DataverseResponse(String, ObjectMapper, ObjectReader)}.
+     *
+     * @param body   the stream to read the body from
+     * @param mapper the object mapper
+     * @param reader a reader for the envelope type, see {@link EnvelopeReaders}
+     * @throws IOException if body cannot be processed properly as JSON
+     */
+    protected DataverseResponse(InputStream body, ObjectMapper mapper, ObjectReader reader) throws IOException {
+        this(body, mapper, reader, DataverseMetrics.NOOP, null);
+    }
+
+    DataverseResponse(InputStream body, ObjectMapper mapper, ObjectReader reader, DataverseMetrics metrics, String endpoint) throws IOException {
+        log.trace("ENTER");
+        this.bodyText = null;
+        this.mapper = mapper;
+        this.reader = reader;
+        this.metrics = metrics;
+        this.endpoint = endpoint;
+        long start = System.nanoTime();
+        try (InputStream is = body; JsonParser parser = mapper.getFactory().createParser(is)) {
+            this.envelope = reader.readValue(parser);
         }
+        metrics.responseParsed(endpoint, System.nanoTime() - start);
     }
 
-    // Must be static, otherwise compiler complains about passing result into 'this()' call
-    private static JavaType constuctJavaTypeForContainerClass(Class<?> containerClass, Class<?> elementClass, ObjectMapper mapper) {
-        TypeFactory typeFactory = mapper.getTypeFactory();
-        JavaType inner = typeFactory.constructParametricType(containerClass, elementClass);
-        return typeFactory.constructParametricType(DataverseEnvelope.class, inner);
+    /**
+     * Creates a response around an envelope that was already deserialized, e.g. from a cache.
+     */
+    DataverseResponse(DataverseEnvelope<D> envelope, ObjectMapper mapper) {
+        this.bodyText = null;
+        this.mapper = mapper;
+        this.reader = null;
+        this.metrics = DataverseMetrics.NOOP;
+        this.endpoint = null;
+        this.envelope = envelope;
     }
 
     /**
+     * The body is deserialized on the first call only. Subsequent calls, also from other threads, return the same envelope.
+     *
      * @return A dataverse envelope
      * @throws IOException if body cannot be processed properly as JSON
      */
     public DataverseEnvelope<D> getEnvelope() throws IOException {
-        return mapper.readValue(bodyText, dataType);
+        DataverseEnvelope<D> result = envelope;
+        if (result == null) {
+            lock.lock();
+            try {
+                result = envelope;
+                if (result == null) {
+                    long start = System.nanoTime();
+                    result = reader.readValue(bodyText);
+                    metrics.responseParsed(endpoint, System.nanoTime() - start);
+                    envelope = result;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return result;
     }
 
     /**
@@ -89,17 +169,38 @@ public class DataverseResponse<D> {
     }
 
     /**
+     * The body is parsed on the first call only. Subsequent calls, also from other threads, return the same tree, so callers should not modify it.
+     *
      * @return the envelope as a JSON AST
-     * @throws IOException if body cannot be processed properly as JSON
+     * @throws IOException           if body cannot be processed properly as JSON
+     * @throws IllegalStateException if the response was streamed or taken from a cache, so that the original body is not available
      */
     public JsonNode getEnvelopeAsJson() throws IOException {
-        return mapper.readTree(bodyText);
+        JsonNode result = envelopeAsJson;
+        if (result == null) {
+            String body = getEnvelopeAsString();
+            lock.lock();
+            try {
+                result = envelopeAsJson;
+                if (result == null) {
+                    result = mapper.readTree(body);
+                    envelopeAsJson = result;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return result;
     }
 
     /**
      * @return the body as a String
+     * @throws IllegalStateException if the response was streamed or taken from a cache, so that the original body is not available
      */
     public String getEnvelopeAsString() {
+        if (bodyText == null)
+            throw new IllegalStateException("The body of a streamed or cached response is not available; use getEnvelope() or getData() instead");
         return bodyText;
     }
 }
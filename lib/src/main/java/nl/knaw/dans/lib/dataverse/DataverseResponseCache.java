@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Size-bounded cache of the responses to GET requests. When a {@link DataverseClient} is configured with a cache (see
+ * {@link DataverseClientConfig#setResponseCache(DataverseResponseCache)}), GET requests that return a JSON envelope are first looked up in it:
+ *
+ * - a response that is younger than its time-to-live is returned without contacting the server;
+ * - a response that is older, but has an `ETag` or `Last-Modified` header, is revalidated with a conditional request (`If-None-Match` or
+ * `If-Modified-Since`); if the server answers `304 Not Modified`, the cached body is used and its time-to-live starts again;
+ * - otherwise the response is fetched and stored.
+ *
+ * The time-to-live is taken from a `max-age` in the `Cache-Control` header of the response if there is one, and from the configuration of the cache
+ * otherwise. Responses with `Cache-Control: no-store` are not stored. Responses are stored per API token, so clients with different tokens can share a
+ * cache without seeing each other's responses.
+ *
+ * When a client sends a POST, PUT or DELETE request, it removes all cached responses about the same dataset, collection or file from the cache, whether
+ * the request succeeds or not. Changes made by other clients are only seen after the time-to-live has passed, so the time-to-live should be chosen with
+ * the staleness the application can tolerate in mind. Endpoints whose responses change often, or must never be stale, can be given a shorter
+ * time-to-live or be excluded. By default, the locks of datasets are excluded, as they are polled to find out when a lock is released.
+ *
+ * Cached responses are kept in memory, in least-recently-used order. When the total size of the bodies exceeds the maximum, the least recently used
+ * responses are evicted. The bodies of cached responses are buffered, also when streaming responses are enabled.
+ */
+public class DataverseResponseCache {
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final Duration defaultTimeToLive;
+    private final Map<String, Duration> endpointTimeToLives = new ConcurrentHashMap<>();
+    private final Set<String> excludedEndpoints = ConcurrentHashMap.newKeySet();
+    private final WeightedLruCache<String, Entry> entries;
+
+    /**
+     * @param maxSizeBytes      the maximum total size of the cached bodies, in bytes
+     * @param defaultTimeToLive the time a response is used without revalidation, if it has no `max-age`
+     */
+    public DataverseResponseCache(long maxSizeBytes, Duration defaultTimeToLive) {
+        this.entries = new WeightedLruCache<>(maxSizeBytes, Entry::weight);
+        this.defaultTimeToLive = defaultTimeToLive;
+        excludeEndpoint("api/datasets/*/locks");
+    }
+
+    /**
+     * Sets the time-to-live of the responses of the endpoints that start with `endpoint`. Endpoints are matched as in
+     * {@link RequestLimiter#setEndpointLimit(String, double, int)}. A time-to-live of zero means that a response is revalidated on every request; this is
+     * only useful if the server sends an `ETag` or `Last-Modified` header.
+     *
+     * @param endpoint   the endpoint template prefix
+     * @param timeToLive the time a response is used without revalidation, if it has no `max-age`
+     */
+    public void setEndpointTimeToLive(String endpoint, Duration timeToLive) {
+        endpointTimeToLives.put(Endpoints.stripSlashes(endpoint), timeToLive);
+    }
+
+    /**
+     * Excludes the endpoints that start with `endpoint` from caching. Endpoints are matched as in {@link RequestLimiter#setEndpointLimit(String, double,
+     * int)}.
+     *
+     * @param endpoint the endpoint template prefix
+     */
+    public void excludeEndpoint(String endpoint) {
+        excludedEndpoints.add(Endpoints.stripSlashes(endpoint));
+    }
+
+    /**
+     * Removes all responses from the cache.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size of the cached bodies, plus a fixed overhead per response, in bytes
+     */
+    public long getSizeBytes() {
+        return entries.getWeight();
+    }
+
+    boolean isCacheable(String endpoint) {
+        return Endpoints.longestMatch(excludedEndpoints, endpoint) == null;
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    void put(String key, String endpoint, String resource, HttpResponse response, byte[] body) {
+        Duration timeToLive = timeToLive(endpoint, response);
+        if (timeToLive == null)
+            return;
+        Entry entry = new Entry(resource, body, response.getEntity() == null ? null : ContentType.get(response.getEntity()), header(response, HttpHeaders.ETAG),
+            header(response, HttpHeaders.LAST_MODIFIED), System.nanoTime() + timeToLive.toNanos());
+        if (!timeToLive.isZero() || entry.hasValidators())
+            entries.put(key, entry);
+    }
+
+    /**
+     * Starts the time-to-live of `entry` again, after the server confirmed it is still valid.
+     */
+    void refresh(String key, Entry entry, String endpoint, HttpResponse notModified) {
+        Duration timeToLive = timeToLive(endpoint, notModified);
+        if (timeToLive == null) {
+            remove(key);
+            return;
+        }
+        String etag = header(notModified, HttpHeaders.ETAG);
+        String lastModified = header(notModified, HttpHeaders.LAST_MODIFIED);
+        Entry refreshed = new Entry(entry.resource, entry.body, entry.contentType, etag != null ? etag : entry.etag,
+            lastModified != null ? lastModified : entry.lastModified, System.nanoTime() + timeToLive.toNanos());
+        entries.replace(key, entry, refreshed);
+    }
+
+    void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all responses about `resource`, see {@link #resource(Path, URI)}.
+     */
+    void invalidate(String resource) {
+        entries.removeIf((k, e) -> e.resource.equals(resource));
+    }
+
+    /**
+     * @return the time-to-live for `response`, or `null` if it must not be stored
+     */
+    private Duration timeToLive(String endpoint, HttpResponse response) {
+        String cacheControl = header(response, HttpHeaders.CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store"))
+                    return null;
+                if (directive.equals("no-cache"))
+                    return Duration.ZERO;
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return Duration.ofSeconds(Long.parseLong(directive.substring("max-age=".length()).trim()));
+                    }
+                    catch (NumberFormatException e) {
+                        // Fall back to the configured time-to-live
+                    }
+                }
+            }
+        }
+        String match = Endpoints.longestMatch(endpointTimeToLives.keySet(), endpoint);
+        return match == null ? defaultTimeToLive : endpointTimeToLives.get(match);
+    }
+
+    private static String header(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * @return the key of the response to a GET request for `uri` with `apiToken`; the token is only included as a digest
+     */
+    static String key(URI uri, String apiToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.valueOf(apiToken).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(uri.toASCIIString()).append(' ');
+            for (int i = 0; i < 16; i++)
+                key.append(String.format("%02x", digest[i]));
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the dataset, collection or other object a request is about: the first three segments of its path, e.g. `api/dataverses/root`, followed by
+     * the persistent identifier if the object is addressed by one. A request that changes an object invalidates all cached responses about that object.
+     */
+    static String resource(Path subPath, URI uri) {
+        StringBuilder resource = new StringBuilder();
+        int count = 0;
+        for (Path segment : subPath) {
+            if (count++ == 3)
+                break;
+            if (resource.length() > 0)
+                resource.append('/');
+            resource.append(segment);
+        }
+        if (resource.toString().endsWith(":persistentId")) {
+            for (NameValuePair parameter : URLEncodedUtils.parse(uri, StandardCharsets.UTF_8)) {
+                if (parameter.getName().equals("persistentId"))
+                    resource.append('=').append(parameter.getValue());
+            }
+        }
+        return resource.toString();
+    }
+
+    static class Entry {
+        private final String resource;
+        private final byte[] body;
+        private final ContentType contentType;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAtNanos;
+
+        Entry(String resource, byte[] body, ContentType contentType, String etag, String lastModified, long expiresAtNanos) {
+            this.resource = resource;
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - expiresAtNanos < 0;
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        long weight() {
+            return body.length + ENTRY_OVERHEAD;
+        }
+
+        /**
+         * @return a new response with the cached body, which can be read like the response of a request
+         */
+        HttpResponse toHttpResponse() {
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+            if (etag != null)
+                response.setHeader(HttpHeaders.ETAG, etag);
+            if (lastModified != null)
+                response.setHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+            response.setEntity(new ByteArrayEntity(body, contentType));
+            return response;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class DirectoryExportSink implements ExportSink {
+    private final Path directory;
+
+    DirectoryExportSink(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public OutputStream openEntry(String persistentId, String exporter) throws IOException {
+        Path file = directory.resolve(ExportSink.entryName(persistentId, exporter));
+        Files.createDirectories(file.getParent());
+        return new BufferedOutputStream(Files.newOutputStream(file));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the sub-path of a request into an endpoint template, in which identifiers and version numbers are replaced by placeholders. For example
+ * `api/dataverses/root/contents` becomes `api/dataverses/{id}/contents`, and `api/datasets/:persistentId/versions/1.0` becomes
+ * `api/datasets/:persistentId/versions/{version}`.
+ */
+final class Endpoints {
+    private static final Pattern NUMERIC = Pattern.compile("\\d+");
+    private static final Set<String> COLLECTIONS = new HashSet<>(Arrays.asList("dataverses", "datasets", "files", "workflows", "datafile", "users", "roles"));
+    private static final Set<String> LITERALS = new HashSet<>(Arrays.asList("export", "datafile"));
+
+    private Endpoints() {
+    }
+
+    static String template(Path subPath) {
+        StringBuilder template = new StringBuilder();
+        String previous = "";
+        for (Path segment : subPath) {
+            String name = segment.toString();
+            if (template.length() > 0)
+                template.append('/');
+            if ("versions".equals(previous))
+                template.append("{version}");
+            else if (NUMERIC.matcher(name).matches() || COLLECTIONS.contains(previous) && !name.startsWith(":") && !LITERALS.contains(name))
+                template.append("{id}");
+            else
+                template.append(name);
+            previous = name;
+        }
+        return template.toString();
+    }
+
+    /**
+     * Finds the longest of `prefixes` that matches `endpoint`. Prefixes are matched against the template segment by segment, and `*` matches any single
+     * segment.
+     *
+     * @param prefixes endpoint template prefixes, without leading or trailing slashes
+     * @param endpoint the endpoint template
+     * @return the longest matching prefix, or `null` if none matches
+     */
+    static String longestMatch(Collection<String> prefixes, String endpoint) {
+        String[] segments = endpoint.split("/");
+        String bestMatch = null;
+        for (String prefix : prefixes) {
+            if (matches(prefix.split("/"), segments) && (bestMatch == null || prefix.length() > bestMatch.length()))
+                bestMatch = prefix;
+        }
+        return bestMatch;
+    }
+
+    private static boolean matches(String[] prefix, String[] segments) {
+        if (prefix.length > segments.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (!"*".equals(prefix[i]) && !prefix[i].equals(segments[i]))
+                return false;
+        }
+        return true;
+    }
+
+    static String stripSlashes(String s) {
+        int begin = 0;
+        int end = s.length();
+        while (begin < end && s.charAt(begin) == '/')
+            begin++;
+        while (end > begin && s.charAt(end - 1) == '/')
+            end--;
+        return s.substring(begin, end);
+    }
+}
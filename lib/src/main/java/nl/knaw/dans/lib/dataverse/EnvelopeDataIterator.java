@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of the `data` array in the envelope of a response, deserializing them one at a time while the body is read from the network.
+ * Only the current element is held in memory. Closing the iterator before the end of the array discards the connection, so that the rest of the body does
+ * not have to be read.
+ *
+ * @param <T> the type of the elements
+ */
+class EnvelopeDataIterator<T> implements Iterator<T>, Closeable {
+    private final HttpResponse response;
+    private final JsonParser parser;
+    private final ObjectReader elementReader;
+    private boolean hasNext;
+    private boolean closed;
+
+    /**
+     * @param response      the response, with its body unread
+     * @param parser        a parser for the body
+     * @param elementReader a reader for the elements of the `data` array
+     * @throws IOException if the body is not an envelope with a `data` array
+     */
+    EnvelopeDataIterator(HttpResponse response, JsonParser parser, ObjectReader elementReader) throws IOException {
+        this.response = response;
+        this.parser = parser;
+        this.elementReader = elementReader;
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new IOException("Response is not a JSON object");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(name)) {
+                if (value != JsonToken.START_ARRAY)
+                    throw new IOException("The data in the response is not an array");
+                advance();
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("Response has no data");
+    }
+
+    private void advance() throws IOException {
+        hasNext = parser.nextToken() != JsonToken.END_ARRAY;
+        if (!hasNext)
+            close();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext)
+            throw new NoSuchElementException();
+        try {
+            T element = elementReader.readValue(parser);
+            advance();
+            return element;
+        }
+        catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        /*
+         * Closing the parser closes the body, which reads it to the end to keep the connection reusable, so before the end of the array the connection
+         * must be discarded first
+         */
+        if (hasNext)
+            HttpClientWrapper.closeQuietly(response);
+        try {
+            parser.close();
+        }
+        catch (IOException e) {
+            // The connection is discarded or released below anyway
+        }
+        if (!hasNext)
+            EntityUtils.consumeQuietly(response.getEntity());
+        hasNext = false;
+    }
+}
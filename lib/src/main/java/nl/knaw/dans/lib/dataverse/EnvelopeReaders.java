@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import nl.knaw.dans.lib.dataverse.model.DataverseEnvelope;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of `ObjectReader`s for {@link DataverseEnvelope}s, keyed by the data class signature that is passed to the methods of {@link HttpClientWrapper}, e.g.
+ * `(Dataverse.class)` or `(List.class, DatasetVersion.class)`. The `JavaType` for each signature is constructed only once, and since an `ObjectReader`
+ * keeps hold of its root deserializer, that deserializer is looked up only once as well.
+ */
+class EnvelopeReaders {
+    private final ObjectMapper mapper;
+    private final Map<List<Class<?>>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    EnvelopeReaders(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    ObjectReader get(Class<?>... dataClass) {
+        return readers.computeIfAbsent(Arrays.asList(dataClass), k -> mapper.readerFor(constructEnvelopeType(mapper, dataClass)));
+    }
+
+    static JavaType constructEnvelopeType(ObjectMapper mapper, Class<?>... dataClass) {
+        if (dataClass.length > 2)
+            throw new IllegalArgumentException("Currently no more than one nested parameter type supported");
+        TypeFactory typeFactory = mapper.getTypeFactory();
+        if (dataClass.length == 2) {
+            JavaType inner = typeFactory.constructParametricType(dataClass[0], dataClass[1]);
+            return typeFactory.constructParametricType(DataverseEnvelope.class, inner);
+        }
+        else {
+            return typeFactory.constructParametricType(DataverseEnvelope.class, dataClass[0]);
+        }
+    }
+}
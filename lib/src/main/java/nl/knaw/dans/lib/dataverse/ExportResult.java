@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+/**
+ * The outcome of the export of one dataset in one format by a {@link DatasetExporter}.
+ */
+public class ExportResult {
+    private final String persistentId;
+    private final String exporter;
+    private final long size;
+    private final Exception error;
+
+    ExportResult(String persistentId, String exporter, long size, Exception error) {
+        this.persistentId = persistentId;
+        this.exporter = exporter;
+        this.size = size;
+        this.error = error;
+    }
+
+    public String getPersistentId() {
+        return persistentId;
+    }
+
+    public String getExporter() {
+        return exporter;
+    }
+
+    /**
+     * @return the size of the export in bytes, or -1 if it failed
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the reason the export failed, or `null` if it succeeded; an `IOException` or `DataverseException` from the export request, or an
+     * `IOException` from the sink
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return persistentId + " " + exporter + (error == null ? " " + size + " bytes" : " FAILED: " + error.getMessage());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Destination of the exports made by a {@link DatasetExporter}. The exporter opens one entry at a time, in the order of the input, and writes the export to
+ * it while the export is read from the network. The entry is closed before the next one is opened. Successive entries may be written from different
+ * threads, but never concurrently.
+ */
+public interface ExportSink extends Closeable {
+
+    /**
+     * Opens the entry for one export. Closing the returned stream completes the entry, but does not close the sink. An entry is only opened when the first
+     * bytes of the export have arrived, so a request that fails, e.g. because the dataset does not exist, leaves no entry. If the connection fails while
+     * the export is being written, the entry is closed with the part that was received; the failure is reported in the {@link ExportResult}.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     * @param exporter     the name of the exporter
+     * @return the stream to write the export to
+     * @throws IOException if the entry could not be opened
+     */
+    OutputStream openEntry(String persistentId, String exporter) throws IOException;
+
+    /**
+     * Creates a sink that writes every export to a file `<persistentId>/<exporter>.<extension>` in a ZIP file. Characters that are not safe in file names
+     * are replaced by `_` in the persistent identifier.
+     *
+     * @param zipFile the ZIP file to create; it is replaced if it exists
+     * @return the sink
+     * @throws IOException if the ZIP file cannot be created
+     */
+    static ExportSink toZipFile(Path zipFile) throws IOException {
+        return new ZipExportSink(zipFile);
+    }
+
+    /**
+     * Creates a sink that writes every export to a file `<persistentId>/<exporter>.<extension>` in a directory. Characters that are not safe in file names
+     * are replaced by `_` in the persistent identifier.
+     *
+     * @param directory the directory; it is created if it does not exist
+     * @return the sink
+     * @throws IOException if the directory cannot be created
+     */
+    static ExportSink toDirectory(Path directory) throws IOException {
+        return new DirectoryExportSink(directory);
+    }
+
+    /**
+     * @return the relative path of an export in a ZIP file or directory
+     */
+    static String entryName(String persistentId, String exporter) {
+        String extension;
+        switch (exporter) {
+            case "dataverse_json":
+            case "schema.org":
+            case "OAI_ORE":
+                extension = "json";
+                break;
+            case "html":
+                extension = "html";
+                break;
+            default:
+                extension = "xml";
+        }
+        return persistentId.replaceAll("[^A-Za-z0-9._-]", "_") + "/" + exporter.replaceAll("[^A-Za-z0-9._-]", "_") + "." + extension;
+    }
+}
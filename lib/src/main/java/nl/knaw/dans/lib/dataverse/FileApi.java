@@ -15,18 +15,48 @@
  */
 package nl.knaw.dans.lib.dataverse;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ResponseHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class FileApi extends AbstractApi {
 
-    private static final Logger log = LoggerFactory.getLogger(DatasetApi.class);
+    private static final Logger log = LoggerFactory.getLogger(FileApi.class);
     private static final String persistendId = ":persistentId/";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long MIN_PART_SIZE = 8 * 1024 * 1024;
 
     private final Path targetBase;
+    private final Path accessBase;
     private final String id;
     private final boolean isPersistentId;
 
@@ -34,6 +64,7 @@ public class FileApi extends AbstractApi {
     protected FileApi(HttpClientWrapper httpClientWrapper, String id, boolean isPersistentId) {
         super(httpClientWrapper);
         this.targetBase = Paths.get("api/files/");
+        this.accessBase = Paths.get("api/access/datafile/");
         this.id = id;
         this.isPersistentId = isPersistentId;
     }
@@ -54,4 +85,259 @@ public class FileApi extends AbstractApi {
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#delete-provenance-json-for-an-uploaded-file
     // TODO: https://guides.dataverse.org/en/latest/api/native-api.html#datafile-integrity
 
+    /**
+     * Downloads the file to `target`. The content is copied from the network to the channel block by block and never held in memory as a whole. The request
+     * is not retried, as the channel may already have received part of the content.
+     *
+     * See [Dataverse API Guide].
+     *
+     * [Dataverse API Guide]: https://guides.dataverse.org/en/latest/api/dataaccess.html#basic-file-access
+     *
+     * @param target the channel to write the content to; it is not closed
+     * @return the number of bytes written
+     */
+    public long downloadTo(WritableByteChannel target) throws IOException, DataverseException {
+        log.trace("ENTER");
+        return download(Collections.emptyMap(), false, r -> copy(r.getEntity().getContent(), target));
+    }
+
+    /**
+     * Downloads the file to `target`, replacing its content if it exists. The content is transferred to the file without being held in memory as a whole.
+     *
+     * @param target the file to write the content to
+     * @return the number of bytes written
+     */
+    public long downloadTo(Path target) throws IOException, DataverseException {
+        log.trace("ENTER");
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            return download(Collections.emptyMap(), true, r -> {
+                channel.truncate(0);
+                return transfer(r.getEntity().getContent(), channel, 0);
+            });
+        }
+    }
+
+    /**
+     * Downloads a range of bytes of the file with an HTTP Range request.
+     *
+     * @param target the channel to write the content to; it is not closed
+     * @param first  the offset of the first byte to download
+     * @param last   the offset of the last byte to download, inclusive
+     * @return the number of bytes written
+     * @throws IOException if the server does not honor the range
+     */
+    public long downloadRangeTo(WritableByteChannel target, long first, long last) throws IOException, DataverseException {
+        log.trace("ENTER");
+        return download(range(first, last), false, r -> {
+            checkPartialContent(r, first);
+            return copy(r.getEntity().getContent(), target);
+        });
+    }
+
+    /**
+     * Resumes an interrupted download. If `target` exists, only the bytes after its current end are requested and appended to it. If the server does not
+     * support range requests, the complete file is downloaded again.
+     *
+     * @param target the partially downloaded file
+     * @return the number of bytes written in this call; 0 if the file was already complete
+     */
+    public long resumeDownloadTo(Path target) throws IOException, DataverseException {
+        log.trace("ENTER");
+        long existing = Files.exists(target) ? Files.size(target) : 0;
+        if (existing == 0)
+            return downloadTo(target);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            return download(range(existing, -1), true, r -> {
+                if (r.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                    log.debug("Server ignored range request; downloading complete file");
+                    channel.truncate(0);
+                    return transfer(r.getEntity().getContent(), channel, 0);
+                }
+                checkPartialContent(r, existing);
+                channel.truncate(existing);
+                return transfer(r.getEntity().getContent(), channel, existing);
+            });
+        }
+        catch (DataverseException e) {
+            if (e.getStatus() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                log.debug("Nothing to resume; {} is already complete", target);
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the file to `target` in parts, with up to `parallelism` range requests at the same time. Each part is written directly to its position in
+     * the file. If the server does not support range requests, the file is downloaded with a single request. Parts smaller than 8 MiB are not split any
+     * further, so small files are downloaded with a single request as well. If the server does not tell the size of the file, everything after the first
+     * part is downloaded with a single request.
+     *
+     * The number of concurrent requests is also limited by the connection pool, see {@link DataverseClientConfig#setMaxConnectionsPerRoute(int)}.
+     *
+     * @param target      the file to write the content to; it is replaced if it exists
+     * @param parallelism the maximum number of concurrent requests
+     * @return the number of bytes written
+     */
+    public long downloadInParallelTo(Path target, int parallelism) throws IOException, DataverseException {
+        log.trace("ENTER");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The first part also tells the size of the file
+            long[] first;
+            try {
+                first = download(range(0, MIN_PART_SIZE - 1), true, r -> {
+                    if (r.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                        channel.truncate(0);
+                        long n = transfer(r.getEntity().getContent(), channel, 0);
+                        return new long[] { n, n };
+                    }
+                    long[] range = checkPartialContent(r, 0);
+                    return new long[] { transfer(r.getEntity().getContent(), channel, 0), range[2] };
+                });
+            }
+            catch (DataverseException e) {
+                // No range is satisfiable for an empty file
+                if (e.getStatus() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+                    return 0;
+                throw e;
+            }
+            long written = first[0];
+            long size = first[1];
+            if (size < 0)
+                return written < MIN_PART_SIZE ? written : downloadRestTo(channel, written);
+            if (written >= size)
+                return written;
+            // Positional writes beyond the end of the file are ignored by FileChannel.transferFrom, so first extend the file to its full size
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            long remaining = size - written;
+            long partSize = Math.max(MIN_PART_SIZE, (remaining + parallelism - 1) / parallelism);
+            List<long[]> parts = new ArrayList<>();
+            for (long start = written; start < size; start += partSize)
+                parts.add(new long[] { start, Math.min(start + partSize, size) - 1 });
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()));
+            try {
+                List<Future<Long>> futures = new ArrayList<>();
+                for (long[] part : parts)
+                    futures.add(executor.submit(() -> download(range(part[0], part[1]), true, r -> {
+                        checkPartialContent(r, part[0]);
+                        return transfer(r.getEntity().getContent(), channel, part[0]);
+                    })));
+                for (Future<Long> future : futures)
+                    written += future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading " + id);
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof DataverseException)
+                    throw (DataverseException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw (Error) cause;
+            }
+            finally {
+                executor.shutdownNow();
+            }
+            if (written != size)
+                throw new IOException("Expected " + size + " bytes for file " + id + " but received " + written);
+            return written;
+        }
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Downloads the bytes after `written` with one open-ended range request, for a server that does not tell the size of the file, so that the rest cannot
+     * be split into parts.
+     *
+     * @return the size of the file
+     */
+    private long downloadRestTo(FileChannel channel, long written) throws IOException, DataverseException {
+        try {
+            return download(range(written, -1), true, r -> {
+                if (r.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                    channel.truncate(0);
+                    return transfer(r.getEntity().getContent(), channel, 0);
+                }
+                checkPartialContent(r, written);
+                return written + transfer(r.getEntity().getContent(), channel, written);
+            });
+        }
+        catch (DataverseException e) {
+            // The first part happened to end exactly at the end of the file
+            if (e.getStatus() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+                return written;
+            throw e;
+        }
+    }
+
+    private <T> T download(Map<String, String> headers, boolean retryable, ResponseHandler<T> handler) throws IOException, DataverseException {
+        if (isPersistentId) {
+            HashMap<String, String> parameters = new HashMap<>();
+            parameters.put("persistentId", id);
+            return httpClientWrapper.getStream(accessBase.resolve(persistendId), parameters, headers, retryable, handler);
+        }
+        else {
+            return httpClientWrapper.getStream(accessBase.resolve(id), new HashMap<>(), headers, retryable, handler);
+        }
+    }
+
+    private static Map<String, String> range(long first, long last) {
+        return Collections.singletonMap(HttpHeaders.RANGE, "bytes=" + first + "-" + (last < 0 ? "" : Long.toString(last)));
+    }
+
+    /**
+     * @return the first and last byte offset and the total size from the `Content-Range` header; the size is -1 if unknown
+     */
+    private static long[] checkPartialContent(HttpResponse response, long expectedFirst) throws IOException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT)
+            throw new IOException("Server does not support range requests; status " + response.getStatusLine().getStatusCode());
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        long[] range = parseContentRange(header == null ? null : header.getValue());
+        if (range == null || range[0] != expectedFirst)
+            throw new IOException("Unexpected Content-Range in response: " + (header == null ? null : header.getValue()));
+        return range;
+    }
+
+    static long[] parseContentRange(String value) {
+        if (value == null)
+            return null;
+        Matcher m = CONTENT_RANGE.matcher(value.trim());
+        if (!m.matches())
+            return null;
+        return new long[] { Long.parseLong(m.group(1)), Long.parseLong(m.group(2)), "*".equals(m.group(3)) ? -1 : Long.parseLong(m.group(3)) };
+    }
+
+    static long copy(InputStream in, WritableByteChannel target) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        long total = 0;
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                total += target.write(buffer);
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Transfers the stream to the file starting at `position`, letting the file channel do the copying.
+     */
+    static long transfer(InputStream in, FileChannel target, long position) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        long total = 0;
+        long n;
+        while ((n = target.transferFrom(source, position + total, BLOCK_SIZE * 16L)) > 0)
+            total += n;
+        return total;
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file to upload to a dataset with {@link DatasetApi#addFile(FileUpload)}. The content is streamed from a file or an `InputStream` while the request is
+ * sent, so it is never held in memory as a whole. While the bytes are sent, the configured checksums are computed and the progress is reported to the
+ * {@link ProgressListener}, if any.
+ *
+ * An upload from a file can be sent more than once, e.g. when the request is retried; the checksums and progress then start over. An upload from an
+ * `InputStream` can be sent only once.
+ */
+public class FileUpload {
+
+    /**
+     * Receives the progress of an upload. It is called on the thread that sends the request, after every block of bytes written, so it should return
+     * quickly.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesSent  the number of bytes of the file sent so far
+         * @param totalBytes the size of the file, or -1 if it is unknown
+         */
+        void progress(long bytesSent, long totalBytes);
+    }
+
+    private final Path file;
+    private final InputStream inputStream;
+    private final String fileName;
+    private final long size;
+    private String contentType = "application/octet-stream";
+    private FileMeta metadata;
+    private ProgressListener progressListener;
+    private List<String> checksumAlgorithms = Collections.emptyList();
+    private volatile Map<String, String> checksums = Collections.emptyMap();
+    private boolean consumed;
+
+    private FileUpload(Path file, InputStream inputStream, String fileName, long size) {
+        this.file = file;
+        this.inputStream = inputStream;
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    /**
+     * @param file the file to upload; the file name in Dataverse is taken from it
+     * @return the upload
+     * @throws IOException if the size of the file cannot be determined
+     */
+    public static FileUpload fromFile(Path file) throws IOException {
+        return new FileUpload(file, null, file.getFileName().toString(), Files.size(file));
+    }
+
+    /**
+     * @param inputStream the content to upload; it is closed when it has been sent
+     * @param fileName    the file name in Dataverse
+     * @param size        the number of bytes in `inputStream`, or -1 if unknown; if unknown, the request is sent with chunked transfer encoding
+     * @return the upload
+     */
+    public static FileUpload fromInputStream(InputStream inputStream, String fileName, long size) {
+        return new FileUpload(null, inputStream, fileName, size);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the size of the content, or -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param contentType the content type of the file; defaults to `application/octet-stream`, in which case Dataverse determines the type itself
+     */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public FileMeta getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @param metadata the description, directory label, categories and restriction of the file; the other properties are ignored
+     */
+    public void setMetadata(FileMeta metadata) {
+        this.metadata = metadata;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public List<String> getChecksumAlgorithms() {
+        return checksumAlgorithms;
+    }
+
+    /**
+     * @param checksumAlgorithms the names of the `MessageDigest` algorithms to compute while sending, e.g. `MD5` and `SHA-1`
+     * @throws IllegalArgumentException if an algorithm is not supported
+     */
+    public void setChecksumAlgorithms(List<String> checksumAlgorithms) {
+        for (String algorithm : checksumAlgorithms)
+            createDigest(algorithm);
+        this.checksumAlgorithms = new ArrayList<>(checksumAlgorithms);
+    }
+
+    /**
+     * @return the hex encoded checksums computed during the last time the upload was sent, by algorithm
+     */
+    public Map<String, String> getChecksums() {
+        return checksums;
+    }
+
+    boolean isRepeatable() {
+        return file != null;
+    }
+
+    synchronized ReadableByteChannel open() throws IOException {
+        if (file != null)
+            return FileChannel.open(file, StandardOpenOption.READ);
+        if (consumed)
+            throw new IllegalStateException("An upload from an InputStream can be sent only once");
+        consumed = true;
+        return Channels.newChannel(inputStream);
+    }
+
+    List<MessageDigest> createDigests() {
+        List<MessageDigest> digests = new ArrayList<>(checksumAlgorithms.size());
+        for (String algorithm : checksumAlgorithms)
+            digests.add(createDigest(algorithm));
+        return digests;
+    }
+
+    void setDigests(List<MessageDigest> digests) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < digests.size(); i++)
+            result.put(checksumAlgorithms.get(i), toHex(digests.get(i).digest()));
+        checksums = Collections.unmodifiableMap(result);
+    }
+
+    private static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported checksum algorithm: " + algorithm, e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous counterpart of {@link HttpClientWrapper}. Requests are handed to a non-blocking HttpAsyncClient and the results are delivered through
+ * CompletableFutures, so that no thread is blocked while a request is in flight. Responses are decoded and deserialized on the response executor rather
+ * than on the I/O thread that received them, so that a large response does not hold up the other requests on that thread.
+ */
+class HttpAsyncClientWrapper implements MediaTypes {
+
+    private static final String HEADER_X_DATAVERSE_KEY = "X-Dataverse-key";
+
+    private final DataverseClientConfig config;
+    private final HttpAsyncClient httpClient;
+    private final ObjectMapper mapper;
+    private final EnvelopeReaders envelopeReaders;
+    private final DataverseMetrics metrics;
+    private final Executor responseExecutor;
+
+    HttpAsyncClientWrapper(DataverseClientConfig config, HttpAsyncClient httpClient, ObjectMapper mapper, Executor responseExecutor) {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.mapper = mapper;
+        this.responseExecutor = responseExecutor;
+        this.envelopeReaders = new EnvelopeReaders(mapper);
+        this.metrics = config.getMetrics();
+    }
+
+    /*
+     * POST methods
+     */
+    public <D> CompletableFuture<DataverseHttpResponse<D>> postModelObjectAsJson(Path subPath, Object modelObject, Class<?>... c) {
+        return postModelObjectAsJson(subPath, modelObject, new HashMap<>(), new HashMap<>(), c);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> postModelObjectAsJson(Path subPath, Object modelObject, Map<String, String> parameters, Map<String, String> headers,
+        Class<?>... c) {
+        try {
+            return postJsonString(subPath, mapper.writeValueAsString(modelObject), parameters, headers, c);
+        }
+        catch (IOException e) {
+            return failed(e);
+        }
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> postJsonString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) {
+        return postString(subPath, s, APPLICATION_JSON, parameters, headers, c);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> postJsonLdString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) {
+        return postString(subPath, s, APPLICATION_JSON_LD, parameters, headers, c);
+    }
+
+    private <D> CompletableFuture<DataverseHttpResponse<D>> postString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers,
+        Class<?>... c) {
+        HttpPost post = new HttpPost(buildURi(subPath, parameters));
+        post.setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
+        headers.forEach(post::setHeader);
+        try {
+            post.setEntity(new StringEntity(s));
+            HttpClientWrapper.compressRequest(config, post, subPath);
+        }
+        catch (IOException e) {
+            return failed(e);
+        }
+        return dispatch(post, subPath, c);
+    }
+
+    /*
+     * PUT methods
+     */
+    public <D> CompletableFuture<DataverseHttpResponse<D>> putModelObjectAsJson(Path subPath, D modelObject, Class<?>... c) {
+        return putModelObjectAsJson(subPath, modelObject, new HashMap<>(), new HashMap<>(), c);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> putModelObjectAsJson(Path subPath, D modelObject, Map<String, String> parameters, Map<String, String> headers,
+        Class<?>... c) {
+        try {
+            return putJsonString(subPath, mapper.writeValueAsString(modelObject), parameters, headers, c);
+        }
+        catch (IOException e) {
+            return failed(e);
+        }
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> putJsonString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) {
+        return putString(subPath, s, APPLICATION_JSON, parameters, headers, c);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> putJsonLdString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) {
+        return putString(subPath, s, APPLICATION_JSON_LD, parameters, headers, c);
+    }
+
+    private <D> CompletableFuture<DataverseHttpResponse<D>> putString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers,
+        Class<?>... c) {
+        HttpPut put = new HttpPut(buildURi(subPath, parameters));
+        put.setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
+        headers.forEach(put::setHeader);
+        try {
+            put.setEntity(new StringEntity(s));
+            HttpClientWrapper.compressRequest(config, put, subPath);
+        }
+        catch (IOException e) {
+            return failed(e);
+        }
+        return dispatch(put, subPath, c);
+    }
+
+    /*
+     * GET methods
+     */
+    public <D> CompletableFuture<DataverseHttpResponse<D>> get(Path subPath, Class<?>... outputClass) {
+        return get(subPath, new HashMap<>(), outputClass);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> get(Path subPath, Map<String, String> parameters, Class<?>... outputClass) {
+        return dispatch(new HttpGet(buildURi(subPath, parameters)), subPath, outputClass);
+    }
+
+    /*
+     * DELETE methods
+     */
+    public <D> CompletableFuture<DataverseHttpResponse<D>> delete(Path subPath, Class<?>... outputClass) {
+        return delete(subPath, new HashMap<>(), outputClass);
+    }
+
+    public <D> CompletableFuture<DataverseHttpResponse<D>> delete(Path subPath, Map<String, String> parameters, Class<?>... outputClass) {
+        return dispatch(new HttpDelete(buildURi(subPath, parameters)), subPath, outputClass);
+    }
+
+    /*
+     *  Helper methods.
+     */
+    private URI buildURi(Path subPath, Map<String, String> parameters) {
+        return HttpClientWrapper.buildURi(config.getBaseUrl(), subPath, parameters);
+    }
+
+    private <D> CompletableFuture<DataverseHttpResponse<D>> dispatch(HttpUriRequest request, Path subPath, Class<?>... dataClass) {
+        String method = request.getMethod();
+        String endpoint = Endpoints.template(subPath);
+        request.setHeader(HEADER_X_DATAVERSE_KEY, config.getApiToken());
+        if (config.isResponseCompression())
+            Compression.acceptCompressedResponse(request);
+        metrics.requestStarted(method, endpoint);
+        long start = System.nanoTime();
+        CompletableFuture<DataverseHttpResponse<D>> future = new CompletableFuture<>();
+        Future<HttpResponse> exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    responseExecutor.execute(() -> {
+                        try {
+                            future.complete(wrap(response, request, endpoint, start, dataClass));
+                        }
+                        catch (IOException | DataverseException | RuntimeException e) {
+                            future.completeExceptionally(e);
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    metrics.requestFailed(method, endpoint, e, System.nanoTime() - start);
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                metrics.requestFailed(method, endpoint, e, System.nanoTime() - start);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                metrics.requestFailed(method, endpoint, new CancellationException("Request was cancelled"), System.nanoTime() - start);
+                future.cancel(false);
+            }
+        });
+        // Cancelling the returned future aborts the request, so that it does not keep a connection busy
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled())
+                exchange.cancel(true);
+        });
+        return future;
+    }
+
+    private <D> DataverseHttpResponse<D> wrap(HttpResponse response, HttpUriRequest request, String endpoint, long start, Class<?>... dataClass)
+        throws IOException, DataverseException {
+        String method = request.getMethod();
+        try {
+            CountingEntity entity = response.getEntity() == null ? null : new CountingEntity(response.getEntity());
+            if (entity != null) {
+                response.setEntity(entity);
+                Compression.decodeResponse(response);
+            }
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                String body = entity == null ? "" : EntityUtils.toString(response.getEntity());
+                metrics.requestCompleted(method, endpoint, status, System.nanoTime() - start, HttpClientWrapper.bytesSent(request), entity == null ? 0 : entity.getByteCount());
+                throw new DataverseException(status, body, response);
+            }
+            DataverseHttpResponse<D> result = config.isStreamingResponses()
+                ? new DataverseHttpResponse<>(response, response.getEntity().getContent(), mapper, envelopeReaders.get(dataClass), metrics, endpoint)
+                : new DataverseHttpResponse<>(response, mapper, envelopeReaders.get(dataClass), metrics, endpoint);
+            metrics.requestCompleted(method, endpoint, status, System.nanoTime() - start, HttpClientWrapper.bytesSent(request), entity == null ? 0 : entity.getByteCount());
+            return result;
+        }
+        catch (IOException | RuntimeException e) {
+            metrics.requestFailed(method, endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private static <D> CompletableFuture<D> failed(Exception e) {
+        CompletableFuture<D> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
@@ -15,29 +15,48 @@
  */
 package nl.knaw.dans.lib.dataverse;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import nl.knaw.dans.lib.dataverse.model.DataverseEnvelope;
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Helper class that wraps an HttpClient, the configuration data and a Jackson object mapper. It implements generic methods for sending HTTP requests to the server and deserializing the responses
@@ -51,15 +70,29 @@ class HttpClientWrapper implements MediaTypes {
     private final DataverseClientConfig config;
     private final HttpClient httpClient;
     private final ObjectMapper mapper;
+    private final EnvelopeReaders envelopeReaders;
+    private final DataverseMetrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final RequestLimiter requestLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final DataverseResponseCache responseCache;
+    private final DatasetVersionCache datasetVersionCache;
+    private final RequestCoalescer requestCoalescer;
 
     HttpClientWrapper(DataverseClientConfig config, HttpClient httpClient, ObjectMapper mapper) {
         this.config = config;
         this.httpClient = httpClient;
         this.mapper = mapper;
+        this.envelopeReaders = new EnvelopeReaders(mapper);
+        this.metrics = config.getMetrics();
+        this.retryPolicy = config.getRetryPolicy();
+        this.requestLimiter = config.getRequestLimiter();
+        this.circuitBreaker = config.getCircuitBreaker();
+        this.responseCache = config.getResponseCache();
+        this.datasetVersionCache = config.getDatasetVersionCache();
+        this.requestCoalescer = config.isRequestCoalescing() ? new RequestCoalescer(metrics) : null;
     }
 
-    // TODO: POST multi-part
-
     /*
      * POST methods
      */
@@ -72,19 +105,36 @@ class HttpClientWrapper implements MediaTypes {
     }
 
     public <D> DataverseHttpResponse<D> postJsonString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) throws IOException, DataverseException {
-        return wrap(postString(subPath, s, APPLICATION_JSON, parameters, headers), c);
+        return execute(postString(subPath, s, APPLICATION_JSON, parameters, headers), subPath, c);
     }
 
     public <D> DataverseHttpResponse<D> postJsonLdString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) throws IOException, DataverseException {
-        return wrap(postString(subPath, s, APPLICATION_JSON_LD, parameters, headers), c);
+        return execute(postString(subPath, s, APPLICATION_JSON_LD, parameters, headers), subPath, c);
+    }
+
+    /**
+     * Posts a file as `multipart/form-data`, streaming its content while the request is sent.
+     *
+     * @param subPath    the sub-path of the endpoint
+     * @param upload     the file
+     * @param jsonData   the object to send as `jsonData` part, or `null` to leave it out
+     * @param parameters the query parameters
+     * @param c          the class of the data, or the container class and element class
+     */
+    public <D> DataverseHttpResponse<D> postMultipart(Path subPath, FileUpload upload, Object jsonData, Map<String, String> parameters, Class<?>... c)
+        throws IOException, DataverseException {
+        HttpPost post = new HttpPost(buildURi(subPath, parameters));
+        post.setEntity(new MultipartUploadEntity(upload, jsonData == null ? null : mapper.writeValueAsString(jsonData)));
+        return execute(post, subPath, c);
     }
 
-    private HttpResponse postString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers) throws IOException, DataverseException {
+    private HttpPost postString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers) throws IOException {
         HttpPost post = new HttpPost(buildURi(subPath, parameters));
         post.setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
         headers.forEach(post::setHeader);
         post.setEntity(new StringEntity(s));
-        return dispatch(post);
+        compressRequest(post, subPath);
+        return post;
     }
 
     /*
@@ -99,19 +149,20 @@ class HttpClientWrapper implements MediaTypes {
     }
 
     public <D> DataverseHttpResponse<D> putJsonString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) throws IOException, DataverseException {
-        return wrap(putString(subPath, s, APPLICATION_JSON, parameters, headers), c);
+        return execute(putString(subPath, s, APPLICATION_JSON, parameters, headers), subPath, c);
     }
 
     public <D> DataverseHttpResponse<D> putJsonLdString(Path subPath, String s, Map<String, String> parameters, Map<String, String> headers, Class<?>... c) throws IOException, DataverseException {
-        return wrap(putString(subPath, s, APPLICATION_JSON_LD, parameters, headers), c);
+        return execute(putString(subPath, s, APPLICATION_JSON_LD, parameters, headers), subPath, c);
     }
 
-    private HttpResponse putString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers) throws IOException, DataverseException {
+    private HttpPut putString(Path subPath, String s, String mediaType, Map<String, String> parameters, Map<String, String> headers) throws IOException {
         HttpPut put = new HttpPut(buildURi(subPath, parameters));
         put.setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
         headers.forEach(put::setHeader);
         put.setEntity(new StringEntity(s));
-        return dispatch(put);
+        compressRequest(put, subPath);
+        return put;
     }
 
     /*
@@ -123,7 +174,100 @@ class HttpClientWrapper implements MediaTypes {
 
     public <D> DataverseHttpResponse<D> get(Path subPath, Map<String, String> parameters, Class<?>... outputClass) throws IOException, DataverseException {
         HttpGet get = new HttpGet(buildURi(subPath, parameters));
-        return wrap(dispatch(get), outputClass);
+        String endpoint = Endpoints.template(subPath);
+        if (requestCoalescer == null)
+            return fetch(get, subPath, endpoint, outputClass);
+        // The data classes are part of the key, as they determine the type of the shared response
+        String key = DataverseResponseCache.key(get.getURI(), config.getApiToken()) + " " + Arrays.toString(outputClass);
+        return requestCoalescer.execute(key, endpoint, () -> fetch(get, subPath, endpoint, outputClass));
+    }
+
+    private <D> DataverseHttpResponse<D> fetch(HttpGet get, Path subPath, String endpoint, Class<?>... outputClass) throws IOException, DataverseException {
+        if (responseCache == null || !responseCache.isCacheable(endpoint))
+            return execute(get, subPath, outputClass);
+        return getCached(get, subPath, endpoint, outputClass);
+    }
+
+    /**
+     * Gets the response from the configured {@link DataverseResponseCache} if it is fresh, revalidates it if it is stale, and fetches and stores it otherwise.
+     */
+    private <D> DataverseHttpResponse<D> getCached(HttpGet get, Path subPath, String endpoint, Class<?>... outputClass) throws IOException, DataverseException {
+        String key = DataverseResponseCache.key(get.getURI(), config.getApiToken());
+        DataverseResponseCache.Entry cached = responseCache.get(key);
+        if (cached != null && cached.isFresh()) {
+            metrics.cacheLookup(endpoint, "hit");
+            return new DataverseHttpResponse<>(cached.toHttpResponse(), mapper, envelopeReaders.get(outputClass), metrics, endpoint);
+        }
+        if (cached != null && cached.hasValidators()) {
+            if (cached.getEtag() != null)
+                get.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+            if (cached.getLastModified() != null)
+                get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+        try {
+            DataverseHttpResponse<D> response = dispatch(get, endpoint, r -> {
+                byte[] body = EntityUtils.toByteArray(r.getEntity());
+                responseCache.put(key, endpoint, DataverseResponseCache.resource(subPath, get.getURI()), r, body);
+                r.setEntity(new ByteArrayEntity(body, ContentType.get(r.getEntity())));
+                return new DataverseHttpResponse<>(r, mapper, envelopeReaders.get(outputClass), metrics, endpoint);
+            });
+            metrics.cacheLookup(endpoint, "miss");
+            return response;
+        }
+        catch (DataverseException e) {
+            if (e.getStatus() != HttpStatus.SC_NOT_MODIFIED || cached == null)
+                throw e;
+            responseCache.refresh(key, cached, endpoint, e.getHttpResponse());
+            metrics.cacheLookup(endpoint, "revalidated");
+            return new DataverseHttpResponse<>(cached.toHttpResponse(), mapper, envelopeReaders.get(outputClass), metrics, endpoint);
+        }
+    }
+
+    /**
+     * Gets a response that is not a JSON envelope, e.g. the content of a file. The response is handed to `handler` while the body is still unread, so that
+     * it can be streamed to its destination.
+     *
+     * @param subPath    the sub-path of the endpoint
+     * @param parameters the query parameters
+     * @param headers    extra request headers, e.g. `Range`
+     * @param retryable  whether the request may be retried after `handler` has started reading the body; only if writing the body again has the same
+     *                   effect as writing it once
+     * @param handler    the handler for a successful response
+     * @param <T>        the type of the result of the handler
+     * @return the result of the handler
+     */
+    public <T> T getStream(Path subPath, Map<String, String> parameters, Map<String, String> headers, boolean retryable, ResponseHandler<T> handler)
+        throws IOException, DataverseException {
+        HttpGet get = new HttpGet(buildURi(subPath, parameters));
+        headers.forEach(get::setHeader);
+        return dispatch(get, Endpoints.template(subPath), retryable, handler);
+    }
+
+    /**
+     * Gets a response of which the data is an array, and returns its elements as a stream. The elements are deserialized one at a time while the stream is
+     * consumed, so that arrays of any length can be processed in constant memory. The connection is held until the end of the stream is reached or the
+     * stream is closed, so the stream should be used in a try-with-resources block. The duration reported to the metrics is the time until the response
+     * headers were received.
+     *
+     * @param subPath      the sub-path of the endpoint
+     * @param parameters   the query parameters
+     * @param elementClass the class of the elements
+     * @param <T>          the type of the elements
+     * @return the elements
+     */
+    public <T> Stream<T> getDataStream(Path subPath, Map<String, String> parameters, Class<T> elementClass) throws IOException, DataverseException {
+        HttpGet get = new HttpGet(buildURi(subPath, parameters));
+        ObjectReader elementReader = mapper.readerFor(elementClass);
+        DetachingResponseHandler<EnvelopeDataIterator<T>> handler = r -> new EnvelopeDataIterator<>(r, mapper.getFactory().createParser(r.getEntity().getContent()),
+            elementReader);
+        EnvelopeDataIterator<T> iterator = dispatch(get, Endpoints.template(subPath), handler);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::close);
+    }
+
+    /**
+     * Handler whose result keeps reading the response body after it returns, and takes over the responsibility of releasing the connection.
+     */
+    private interface DetachingResponseHandler<T> extends ResponseHandler<T> {
     }
 
     /*
@@ -135,15 +279,54 @@ class HttpClientWrapper implements MediaTypes {
 
     public <D> DataverseHttpResponse<D> delete(Path subPath, Map<String, String> parameters, Class<?>... outputClass) throws IOException, DataverseException {
         HttpDelete delete = new HttpDelete(buildURi(subPath, parameters));
-        return wrap(dispatch(delete), outputClass);
+        return execute(delete, subPath, outputClass);
+    }
+
+    DatasetVersionCache getDatasetVersionCache() {
+        return datasetVersionCache;
+    }
+
+    ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    DataverseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return a response with `data`, which was taken from a cache
+     */
+    <D> DataverseResponse<D> cachedResponse(D data) {
+        DataverseEnvelope<D> envelope = new DataverseEnvelope<>();
+        envelope.setStatus("OK");
+        envelope.setData(data);
+        return new DataverseResponse<>(envelope, mapper);
     }
 
     /*
      *  Helper methods.
      */
     private URI buildURi(Path subPath, Map<String, String> parameters) {
+        return buildURi(config.getBaseUrl(), subPath, parameters);
+    }
+
+    private void compressRequest(HttpEntityEnclosingRequest request, Path subPath) throws IOException {
+        compressRequest(config, request, subPath);
+    }
+
+    /**
+     * Compresses the body of `request` if the configuration asks for it, see {@link DataverseClientConfig#setRequestCompressionEndpoints(Collection)}.
+     */
+    static void compressRequest(DataverseClientConfig config, HttpEntityEnclosingRequest request, Path subPath) throws IOException {
+        if (!config.getRequestCompressionEndpoints().isEmpty()
+            && Endpoints.longestMatch(config.getRequestCompressionEndpoints(), Endpoints.template(subPath)) != null)
+            Compression.compressRequest(request, config.getRequestCompressionThreshold());
+    }
+
+    static URI buildURi(URI baseUrl, Path subPath, Map<String, String> parameters) {
         try {
-            URI uri = new URIBuilder(config.getBaseUrl().resolve(subPath.toString())).setParameters(parameters.entrySet().stream()
+            URI uri = new URIBuilder(baseUrl.resolve(subPath.toString())).setParameters(parameters.entrySet().stream()
                 .map(e -> new BasicNameValuePair(e.getKey(), e.getValue()))
                 .collect(Collectors.toList())).build();
             log.debug("buildUri: {}", uri.toASCIIString());
@@ -154,15 +337,202 @@ class HttpClientWrapper implements MediaTypes {
         }
     }
 
-    private <D> DataverseHttpResponse<D> wrap(HttpResponse response, Class<?>... dataClass) throws  IOException {
-        return new DataverseHttpResponse<>(response, mapper, dataClass);
+    private <D> DataverseHttpResponse<D> execute(HttpUriRequest request, Path subPath, Class<?>... dataClass) throws IOException, DataverseException {
+        String endpoint = Endpoints.template(subPath);
+        try {
+            return dispatch(request, endpoint, r -> wrap(r, endpoint, dataClass));
+        }
+        finally {
+            // Also after a failure, as the server may have made the change before the failure
+            if (responseCache != null && !HttpGet.METHOD_NAME.equals(request.getMethod()))
+                responseCache.invalidate(DataverseResponseCache.resource(subPath, request.getURI()));
+        }
+    }
+
+    private <D> DataverseHttpResponse<D> wrap(HttpResponse response, String endpoint, Class<?>... dataClass) throws IOException {
+        if (config.isStreamingResponses())
+            return new DataverseHttpResponse<>(response, response.getEntity().getContent(), mapper, envelopeReaders.get(dataClass), metrics, endpoint);
+        return new DataverseHttpResponse<>(response, mapper, envelopeReaders.get(dataClass), metrics, endpoint);
+    }
+
+    /**
+     * Sends the request and hands a successful response to `handler`, retrying according to the configured {@link RetryPolicy}.
+     */
+    private <T> T dispatch(HttpUriRequest request, String endpoint, ResponseHandler<T> handler) throws IOException, DataverseException {
+        return dispatch(request, endpoint, true, handler);
     }
 
-    private HttpResponse dispatch(HttpUriRequest request) throws IOException, DataverseException {
+    /**
+     * @param retryable whether the request may be retried; must be `false` if `handler` has side effects that cannot be repeated
+     */
+    private <T> T dispatch(HttpUriRequest request, String endpoint, boolean retryable, ResponseHandler<T> handler) throws IOException, DataverseException {
+        String method = request.getMethod();
         request.setHeader(HEADER_X_DATAVERSE_KEY, config.getApiToken());
-        HttpResponse r = httpClient.execute(request);
-        if (r.getStatusLine().getStatusCode() >= 200 || r.getStatusLine().getStatusCode() < 300) return r;
-        else throw new DataverseException(r.getStatusLine().getStatusCode(), EntityUtils.toString(r.getEntity()), r);
+        if (config.isResponseCompression())
+            Compression.acceptCompressedResponse(request);
+        if (!retryable || !retryPolicy.appliesTo(method) || !isRepeatable(request))
+            return attempt(request, method, endpoint, handler);
+        long deadline = System.nanoTime() + retryPolicy.getMaxRetryDuration().toNanos();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attempt(request, method, endpoint, handler);
+            }
+            catch (IOException e) {
+                if (!isRetryable(e))
+                    throw e;
+                backOff(e, method, endpoint, attempt, e.getClass().getSimpleName(), retryPolicy.backoffMillis(attempt), deadline);
+            }
+            catch (DataverseException e) {
+                if (!retryPolicy.isRetryableStatus(e.getStatus()))
+                    throw e;
+                Header retryAfter = e.getHttpResponse().getFirstHeader(HttpHeaders.RETRY_AFTER);
+                long delay = RetryPolicy.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue(), System.currentTimeMillis());
+                backOff(e, method, endpoint, attempt, Integer.toString(e.getStatus()), delay >= 0 ? delay : retryPolicy.backoffMillis(attempt), deadline);
+            }
+        }
     }
 
+    /**
+     * Waits before the next attempt, or rethrows `failure` if the policy does not allow another attempt.
+     */
+    private <E extends Exception> void backOff(E failure, String method, String endpoint, int attempt, String reason, long delayMillis, long deadline)
+        throws E, InterruptedIOException {
+        if (attempt >= retryPolicy.getMaxAttempts() || System.nanoTime() + delayMillis * 1_000_000 > deadline)
+            throw failure;
+        log.warn("{} {} failed ({}), attempt {} of {}; retrying in {} ms", method, endpoint, reason, attempt, retryPolicy.getMaxAttempts(), delayMillis);
+        metrics.requestRetried(method, endpoint, attempt, reason, delayMillis);
+        try {
+            Thread.sleep(delayMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting to retry " + method + " " + endpoint);
+            interrupted.addSuppressed(failure);
+            throw interrupted;
+        }
+    }
+
+    /*
+     * Errors in the response body and errors that will not go away by trying again are not retried.
+     */
+    private static boolean isRetryable(IOException e) {
+        return !(e instanceof JsonProcessingException || e instanceof UnknownHostException || e instanceof SSLException || e instanceof CircuitBreakerOpenException
+            || Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Sends the request once, as soon as the configured {@link RequestLimiter} allows it.
+     */
+    private <T> T attempt(HttpUriRequest request, String method, String endpoint, ResponseHandler<T> handler) throws IOException, DataverseException {
+        if (requestLimiter == null)
+            return guardedSend(request, method, endpoint, handler);
+        long queued = System.nanoTime();
+        try (RequestLimiter.Permit ignored = requestLimiter.acquire(endpoint)) {
+            metrics.requestQueued(method, endpoint, System.nanoTime() - queued);
+            return guardedSend(request, method, endpoint, handler);
+        }
+    }
+
+    /**
+     * Sends the request if the configured {@link CircuitBreaker} allows it, and records the outcome with the breaker.
+     */
+    private <T> T guardedSend(HttpUriRequest request, String method, String endpoint, ResponseHandler<T> handler) throws IOException, DataverseException {
+        if (circuitBreaker == null)
+            return send(request, method, endpoint, handler);
+        circuitBreaker.acquirePermission();
+        long start = System.nanoTime();
+        try {
+            T result = send(request, method, endpoint, handler);
+            circuitBreaker.onResult(true, System.nanoTime() - start);
+            return result;
+        }
+        catch (DataverseException e) {
+            circuitBreaker.onResult(e.getStatus() < 500 && e.getStatus() != 429, System.nanoTime() - start);
+            throw e;
+        }
+        catch (IOException e) {
+            // A body that cannot be parsed still means the server responded
+            circuitBreaker.onResult(e instanceof JsonProcessingException, System.nanoTime() - start);
+            throw e;
+        }
+        catch (RuntimeException | Error e) {
+            circuitBreaker.onResult(true, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request and hands a successful response to `handler`. When the handler returns, the rest of the response body is consumed, so that the
+     * connection is released. Every attempt is reported to the configured {@link DataverseMetrics}.
+     */
+    private <T> T send(HttpUriRequest request, String method, String endpoint, ResponseHandler<T> handler) throws IOException, DataverseException {
+        metrics.requestStarted(method, endpoint);
+        long start = System.nanoTime();
+        HttpResponse r;
+        try {
+            r = httpClient.execute(request);
+        }
+        catch (IOException | RuntimeException e) {
+            metrics.requestFailed(method, endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
+        CountingEntity entity = null;
+        boolean completed = false;
+        try {
+            if (r.getEntity() != null) {
+                // Counts the bytes as received, before they are decompressed
+                entity = new CountingEntity(r.getEntity());
+                r.setEntity(entity);
+                Compression.decodeResponse(r);
+            }
+            int status = r.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                String body = entity == null ? "" : EntityUtils.toString(r.getEntity());
+                completed = true;
+                metrics.requestCompleted(method, endpoint, status, System.nanoTime() - start, bytesSent(request), entity == null ? 0 : entity.getByteCount());
+                throw new DataverseException(status, body, r);
+            }
+            T result = handler.handleResponse(r);
+            completed = true;
+            metrics.requestCompleted(method, endpoint, status, System.nanoTime() - start, bytesSent(request), entity == null ? 0 : entity.getByteCount());
+            return result;
+        }
+        catch (IOException | RuntimeException e) {
+            // Every started request is reported as completed or failed exactly once, so that in-flight gauges return to zero
+            if (!completed)
+                metrics.requestFailed(method, endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
+        finally {
+            if (completed) {
+                if (!(handler instanceof DetachingResponseHandler))
+                    EntityUtils.consumeQuietly(entity);
+            }
+            else
+                // Do not read the rest of a possibly large body; closing the response discards the connection instead
+                closeQuietly(r);
+        }
+    }
+
+    static void closeQuietly(HttpResponse response) {
+        if (response instanceof Closeable) {
+            try {
+                ((Closeable) response).close();
+            }
+            catch (IOException e) {
+                log.debug("Could not close response", e);
+            }
+        }
+    }
+
+    private static boolean isRepeatable(HttpUriRequest request) {
+        return !(request instanceof HttpEntityEnclosingRequest) || ((HttpEntityEnclosingRequest) request).getEntity() == null
+            || ((HttpEntityEnclosingRequest) request).getEntity().isRepeatable();
+    }
+
+    static long bytesSent(HttpUriRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null)
+            return ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+        return 0;
+    }
 }
@@ -16,9 +16,10 @@
 package nl.knaw.dans.lib.dataverse;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import nl.knaw.dans.lib.dataverse.model.dataset.CompoundField;
 import nl.knaw.dans.lib.dataverse.model.dataset.ControlledMultiValueField;
 import nl.knaw.dans.lib.dataverse.model.dataset.ControlledSingleValueField;
@@ -28,12 +29,15 @@ import nl.knaw.dans.lib.dataverse.model.dataset.PrimitiveSingleValueField;
 import nl.knaw.dans.lib.dataverse.model.dataset.SingleValueField;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
+/**
+ * Deserializes a {@link MetadataField} in a single pass over the parser's tokens, without first building a `JsonNode` tree. If the `value` property
+ * happens to precede `typeClass` or `multiple`, its tokens are buffered until it is known how to interpret them.
+ */
 public class MetadataFieldDeserializer extends StdDeserializer {
 
     public MetadataFieldDeserializer() {
@@ -46,74 +50,145 @@ public class MetadataFieldDeserializer extends StdDeserializer {
 
     @Override
     public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
-        return deserializedMetadataField(p.getCodec().readTree(p), false);
+        return deserializeMetadataField(p, ctxt, false);
     }
 
-    private MetadataField deserializedMetadataField(JsonNode n, boolean subField) {
-        String typeName = n.get("typeName").asText();
-        String typeClass = n.get("typeClass").asText();
-        boolean multiple = n.get("multiple").asBoolean();
-        JsonNode valueNode = n.get("value");
+    private MetadataField deserializeMetadataField(JsonParser p, DeserializationContext ctxt, boolean subField) throws IOException {
+        String typeName = null;
+        String typeClass = null;
+        Boolean multiple = null;
+        Object value = null;
+        TokenBuffer bufferedValue = null;
 
-        if ("primitive".equals(typeClass)) {
-            if (multiple) {
-                if (subField) throw new IllegalArgumentException("Compound fields cannot contain multi-value subfields");
-                Iterable<JsonNode> jsonNodeIterable = valueNode::elements;
-                return new PrimitiveMultiValueField(
-                    typeClass,
-                    typeName,
-                    true,
-                    StreamSupport.stream(jsonNodeIterable.spliterator(), false)
-                        .map(JsonNode::asText).collect(Collectors.toList()));
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT)
+            t = p.nextToken();
+        for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            switch (name) {
+                case "typeName":
+                    typeName = readText(p);
+                    break;
+                case "typeClass":
+                    typeClass = readText(p);
+                    break;
+                case "multiple":
+                    multiple = p.getValueAsBoolean();
+                    break;
+                case "value":
+                    if (typeClass != null && multiple != null)
+                        value = readValue(p, typeClass, multiple, subField, ctxt);
+                    else {
+                        bufferedValue = new TokenBuffer(p, ctxt);
+                        bufferedValue.copyCurrentStructure(p);
+                    }
+                    break;
+                default:
+                    p.skipChildren();
             }
-            else {
-                return new PrimitiveSingleValueField(
-                    typeClass,
-                    typeName,
-                    false,
-                    valueNode.asText());
+        }
+
+        if (typeName == null || typeClass == null || multiple == null)
+            throw new IllegalArgumentException("Metadata field must have typeName, typeClass and multiple properties");
+        if (bufferedValue != null) {
+            try (JsonParser bufferedParser = bufferedValue.asParser(p)) {
+                bufferedParser.nextToken();
+                value = readValue(bufferedParser, typeClass, multiple, subField, ctxt);
             }
         }
+        if (value == null && isKnownTypeClass(typeClass))
+            throw new IllegalArgumentException("Metadata field " + typeName + " has no value");
+        return createMetadataField(typeName, typeClass, multiple, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MetadataField createMetadataField(String typeName, String typeClass, boolean multiple, Object value) {
+        if ("primitive".equals(typeClass)) {
+            if (multiple)
+                return new PrimitiveMultiValueField(typeClass, typeName, true, (List<String>) value);
+            else
+                return new PrimitiveSingleValueField(typeClass, typeName, false, (String) value);
+        }
         else if ("controlledVocabulary".equals(typeClass)) {
+            if (multiple)
+                return new ControlledMultiValueField(typeClass, typeName, true, (List<String>) value);
+            else
+                return new ControlledSingleValueField(typeClass, typeName, false, (String) value);
+        }
+        else if ("compound".equals(typeClass)) {
+            return new CompoundField(typeClass, typeName, multiple, (List<Map<String, SingleValueField>>) value);
+        }
+        return null;
+    }
+
+    private boolean isKnownTypeClass(String typeClass) {
+        return "primitive".equals(typeClass) || "controlledVocabulary".equals(typeClass) || "compound".equals(typeClass);
+    }
+
+    /*
+     * Reads the value the parser is positioned on, leaving the parser on its last token.
+     */
+    private Object readValue(JsonParser p, String typeClass, boolean multiple, boolean subField, DeserializationContext ctxt) throws IOException {
+        if ("primitive".equals(typeClass) || "controlledVocabulary".equals(typeClass)) {
             if (multiple) {
                 if (subField) throw new IllegalArgumentException("Compound fields cannot contain multi-value subfields");
-                Iterable<JsonNode> jsonNodeIterable = valueNode::elements;
-                return new ControlledMultiValueField(
-                    typeClass,
-                    typeName,
-                    true,
-                    StreamSupport.stream(jsonNodeIterable.spliterator(), false)
-                        .map(JsonNode::asText).collect(Collectors.toList()));
+                return readTextList(p);
             }
             else {
-                return new ControlledSingleValueField(
-                    typeClass,
-                    typeName,
-                    false,
-                    valueNode.asText());
+                return readText(p);
             }
         }
         else if ("compound".equals(typeClass)) {
             if (subField) throw new IllegalArgumentException("Compound fields cannot contain compound fields as subfields");
-            Iterable<JsonNode> jsonNodeIterable = valueNode::elements;
-            return new CompoundField(
-                typeClass,
-                typeName,
-                multiple,
-                StreamSupport.stream(jsonNodeIterable.spliterator(), false)
-                    .map(this::deserializeCompoundFieldValue).collect(Collectors.toList()));
+            List<Map<String, SingleValueField>> values = new ArrayList<>();
+            if (p.currentToken() == JsonToken.START_ARRAY) {
+                while (p.nextToken() != JsonToken.END_ARRAY)
+                    values.add(readCompoundFieldValue(p, ctxt));
+            }
+            else {
+                values.add(readCompoundFieldValue(p, ctxt));
+            }
+            return values;
         }
-
+        p.skipChildren();
         return null;
     }
 
-    private Map<String, SingleValueField> deserializeCompoundFieldValue(JsonNode jsonNode) {
+    private Map<String, SingleValueField> readCompoundFieldValue(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT)
+            throw new IllegalArgumentException("Compound field value must be an object");
         Map<String, SingleValueField> subFields = new HashMap<>();
-        for (Iterator<String> it = jsonNode.fieldNames(); it.hasNext(); ) {
-            String subFieldName = it.next();
-            subFields.put(subFieldName, (SingleValueField) deserializedMetadataField(jsonNode.get(subFieldName), true));
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String subFieldName = p.getCurrentName();
+            p.nextToken();
+            subFields.put(subFieldName, (SingleValueField) deserializeMetadataField(p, ctxt, true));
         }
         return subFields;
     }
 
+    private List<String> readTextList(JsonParser p) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (p.currentToken() == JsonToken.START_ARRAY) {
+            while (p.nextToken() != JsonToken.END_ARRAY)
+                values.add(readText(p));
+        }
+        else {
+            p.skipChildren();
+        }
+        return values;
+    }
+
+    /*
+     * Same semantics as JsonNode.asText(): scalars as text, "null" for null and the empty string for containers.
+     */
+    private String readText(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NULL)
+            return "null";
+        if (t.isScalarValue())
+            return p.getText();
+        p.skipChildren();
+        return "";
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DataverseMetrics} implementation that records to a Micrometer {@link MeterRegistry}. The following meters are registered:
+ *
+ * <!-- @formatter:off -->
+ * - `dataverse.client.requests` (timer, tags `method`, `endpoint`, `status`): latency of the requests that got a response;
+ * - `dataverse.client.errors` (counter, tags `method`, `endpoint`, `exception`): requests that failed without a response;
+ * - `dataverse.client.queue` (timer, tags `method`, `endpoint`): time requests waited for the request limiter;
+ * - `dataverse.client.retries` (counter, tags `method`, `endpoint`, `reason`): retried requests;
+ * - `dataverse.client.cache` (counter, tags `endpoint`, `outcome`): lookups in the response cache;
+ * - `dataverse.client.coalesced` (counter, tag `endpoint`): GET requests that shared the response of an identical request in flight;
+ * - `dataverse.client.bytes.sent` and `dataverse.client.bytes.received` (distribution summaries, tags `method`, `endpoint`): body sizes;
+ * - `dataverse.client.parse` (timer, tag `endpoint`): time spent deserializing response envelopes;
+ * - `dataverse.client.inflight` (gauge): the number of requests currently in flight.
+ * <!-- @formatter:on -->
+ *
+ * Micrometer is an optional dependency of this library. Applications that use this class must put `micrometer-core` on their classpath themselves.
+ */
+public class MicrometerDataverseMetrics implements DataverseMetrics {
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public MicrometerDataverseMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("dataverse.client.inflight", inFlight, AtomicInteger::get)
+            .description("Requests to Dataverse currently in flight")
+            .register(registry);
+    }
+
+    @Override
+    public void requestStarted(String method, String endpoint) {
+        inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void requestCompleted(String method, String endpoint, int status, long durationNanos, long bytesSent, long bytesReceived) {
+        inFlight.decrementAndGet();
+        Timer.builder("dataverse.client.requests")
+            .description("Requests to Dataverse")
+            .tags("method", method, "endpoint", endpoint, "status", Integer.toString(status))
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+        if (bytesSent >= 0)
+            DistributionSummary.builder("dataverse.client.bytes.sent")
+                .baseUnit("bytes")
+                .tags("method", method, "endpoint", endpoint)
+                .register(registry)
+                .record(bytesSent);
+        DistributionSummary.builder("dataverse.client.bytes.received")
+            .baseUnit("bytes")
+            .tags("method", method, "endpoint", endpoint)
+            .register(registry)
+            .record(bytesReceived);
+    }
+
+    @Override
+    public void requestFailed(String method, String endpoint, Throwable cause, long durationNanos) {
+        inFlight.decrementAndGet();
+        Counter.builder("dataverse.client.errors")
+            .description("Requests to Dataverse that failed without a response")
+            .tags("method", method, "endpoint", endpoint, "exception", cause.getClass().getSimpleName())
+            .register(registry)
+            .increment();
+    }
+
+    @Override
+    public void responseParsed(String endpoint, long durationNanos) {
+        Timer.builder("dataverse.client.parse")
+            .description("Deserialization of Dataverse response envelopes")
+            .tags("endpoint", endpoint == null ? "unknown" : endpoint)
+            .register(registry)
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void requestRetried(String method, String endpoint, int attempt, String reason, long delayMillis) {
+        Counter.builder("dataverse.client.retries")
+            .description("Requests to Dataverse that were retried")
+            .tags("method", method, "endpoint", endpoint, "reason", reason)
+            .register(registry)
+            .increment();
+    }
+
+    @Override
+    public void requestQueued(String method, String endpoint, long queueNanos) {
+        Timer.builder("dataverse.client.queue")
+            .description("Time requests to Dataverse waited for the request limiter")
+            .tags("method", method, "endpoint", endpoint)
+            .register(registry)
+            .record(queueNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void cacheLookup(String endpoint, String outcome) {
+        Counter.builder("dataverse.client.cache")
+            .description("Lookups of responses from Dataverse in the response cache")
+            .tags("endpoint", endpoint, "outcome", outcome)
+            .register(registry)
+            .increment();
+    }
+
+    @Override
+    public void requestCoalesced(String endpoint) {
+        Counter.builder("dataverse.client.coalesced")
+            .description("GET requests to Dataverse that shared the response of an identical request in flight")
+            .tags("endpoint", endpoint)
+            .register(registry)
+            .increment();
+    }
+}
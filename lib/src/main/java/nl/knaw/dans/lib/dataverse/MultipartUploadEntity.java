@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A `multipart/form-data` request body with an optional `jsonData` part, followed by a `file` part that is streamed from a {@link FileUpload} while the
+ * request is written. Only one block of the file is in memory at any time.
+ */
+class MultipartUploadEntity extends AbstractHttpEntity {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final FileUpload upload;
+    private final byte[] head;
+    private final byte[] tail;
+
+    /**
+     * @param upload   the file to send
+     * @param jsonData the value of the `jsonData` part, or `null` to leave it out
+     */
+    MultipartUploadEntity(FileUpload upload, String jsonData) {
+        this.upload = upload;
+        String boundary = "dataverse-" + UUID.randomUUID();
+        setContentType("multipart/form-data; boundary=" + boundary);
+        setChunked(upload.getSize() < 0);
+        StringBuilder head = new StringBuilder();
+        if (jsonData != null) {
+            head.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"jsonData\"\r\n")
+                .append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+                .append(jsonData).append("\r\n");
+        }
+        head.append("--").append(boundary).append("\r\n")
+            .append("Content-Disposition: form-data; name=\"file\"; filename=\"").append(escape(upload.getFileName())).append("\"\r\n")
+            .append("Content-Type: ").append(upload.getContentType()).append("\r\n\r\n");
+        this.head = head.toString().getBytes(StandardCharsets.UTF_8);
+        this.tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String escape(String fileName) {
+        return fileName.replace("\\", "\\\\").replace("\"", "\\\"").replace("\r", "").replace("\n", "");
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return upload.isRepeatable();
+    }
+
+    @Override
+    public long getContentLength() {
+        if (upload.getSize() < 0)
+            return -1;
+        return head.length + upload.getSize() + tail.length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !upload.isRepeatable();
+    }
+
+    /**
+     * Not supported, as the content is produced by {@link #writeTo(OutputStream)}.
+     */
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException("Multipart upload can only be written to an output stream");
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        List<MessageDigest> digests = upload.createDigests();
+        FileUpload.ProgressListener listener = upload.getProgressListener();
+        long total = upload.getSize();
+        long sent = 0;
+        out.write(head);
+        byte[] block = new byte[BLOCK_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        try (ReadableByteChannel channel = upload.open()) {
+            int n;
+            while ((n = channel.read(buffer)) >= 0) {
+                if (n == 0)
+                    continue;
+                out.write(block, 0, n);
+                for (MessageDigest digest : digests)
+                    digest.update(block, 0, n);
+                sent += n;
+                if (listener != null)
+                    listener.progress(sent, total);
+                buffer.clear();
+            }
+        }
+        if (total >= 0 && sent != total)
+            throw new IOException("Expected " + total + " bytes for " + upload.getFileName() + " but read " + sent);
+        out.write(tail);
+        out.flush();
+        upload.setDigests(digests);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lets concurrent identical requests share one request to the server. The first caller with a given key sends the request; callers with the same key that
+ * arrive while it is in flight wait for it and receive the same result, or the same exception. A caller that arrives after the request has completed sends a
+ * new one, so results are never reused beyond the requests that overlapped.
+ */
+final class RequestCoalescer {
+
+    interface Request<T> {
+        T send() throws IOException, DataverseException;
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final DataverseMetrics metrics;
+
+    RequestCoalescer(DataverseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param key      identifies the request; callers with equal keys must expect the same result
+     * @param endpoint the endpoint template, for the metrics
+     * @param request  sends the request
+     * @param <T>      the type of the result
+     * @return the result of this request, or of the identical request that was already in flight
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, String endpoint, Request<T> request) throws IOException, DataverseException {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            metrics.requestCoalesced(endpoint);
+            return (T) await(leader, endpoint);
+        }
+        try {
+            T result = request.send();
+            flight.complete(result);
+            return result;
+        }
+        catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight, String endpoint) throws IOException, DataverseException {
+        try {
+            return flight.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for identical request to " + endpoint);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof DataverseException)
+                throw (DataverseException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
+    }
+}
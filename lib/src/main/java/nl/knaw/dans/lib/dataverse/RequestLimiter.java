@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate and concurrency of the requests sent to a Dataverse server, to protect it from being overloaded by many concurrent workers. Every request
+ * must first get a token from a token bucket, which refills at `requestsPerSecond`, and then a permit from a semaphore with `maxConcurrentRequests`
+ * permits, which it holds until its response has been read. Requests that cannot proceed immediately wait in line.
+ *
+ * Stricter limits can be set for expensive endpoints with {@link #setEndpointLimit(String, double, int)}. A request to such an endpoint must satisfy both the
+ * global and the endpoint limit. It waits for the endpoint limit first, so that requests waiting for a saturated endpoint do not hold global permits and
+ * keep requests to other endpoints waiting.
+ *
+ * To limit the load of all clients that talk to the same server together, configure them with the same instance.
+ */
+public class RequestLimiter {
+    private final Limit global;
+    private final Map<String, Limit> endpointLimits = new ConcurrentHashMap<>();
+    private final Map<String, List<Limit>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestsPerSecond     the maximum sustained rate of requests, or 0 for no rate limit
+     * @param maxConcurrentRequests the maximum number of requests in flight at the same time, or 0 for no concurrency limit
+     */
+    public RequestLimiter(double requestsPerSecond, int maxConcurrentRequests) {
+        this.global = new Limit(requestsPerSecond, maxConcurrentRequests);
+    }
+
+    /**
+     * Sets limits for the endpoints that start with `endpoint`. Endpoints are matched against the templates also used by {@link DataverseMetrics}, segment by
+     * segment, and `*` matches any single segment. For example, <code>api/datasets/&#42;/versions</code> matches all requests for the versions of a dataset, whether
+     * it is addressed by persistent identifier or by database id. If more than one prefix matches, the longest one is used.
+     *
+     * @param endpoint              the endpoint template prefix
+     * @param requestsPerSecond     the maximum sustained rate of requests to these endpoints, or 0 for no rate limit
+     * @param maxConcurrentRequests the maximum number of requests to these endpoints in flight at the same time, or 0 for no concurrency limit
+     */
+    public void setEndpointLimit(String endpoint, double requestsPerSecond, int maxConcurrentRequests) {
+        endpointLimits.put(Endpoints.stripSlashes(endpoint), new Limit(requestsPerSecond, maxConcurrentRequests));
+        resolved.clear();
+    }
+
+    /**
+     * Waits until a request to `endpoint` may be sent.
+     *
+     * @param endpoint the endpoint template
+     * @return the permit, which must be closed when the response has been read
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    Permit acquire(String endpoint) throws InterruptedIOException {
+        List<Limit> limits = resolved.computeIfAbsent(endpoint, this::resolve);
+        List<Limit> acquired = new ArrayList<>(limits.size());
+        try {
+            for (Limit limit : limits) {
+                limit.acquire();
+                acquired.add(limit);
+            }
+        }
+        catch (InterruptedException e) {
+            acquired.forEach(Limit::release);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send request to " + endpoint);
+        }
+        return () -> acquired.forEach(Limit::release);
+    }
+
+    private List<Limit> resolve(String endpoint) {
+        List<Limit> limits = new ArrayList<>(2);
+        String bestMatch = Endpoints.longestMatch(endpointLimits.keySet(), endpoint);
+        if (bestMatch != null)
+            limits.add(endpointLimits.get(bestMatch));
+        limits.add(global);
+        return limits;
+    }
+
+    /**
+     * Permission to send one request. Closing it returns the concurrency permits.
+     */
+    interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Limit {
+        private final TokenBucket bucket;
+        private final Semaphore semaphore;
+
+        Limit(double requestsPerSecond, int maxConcurrentRequests) {
+            if (requestsPerSecond < 0 || maxConcurrentRequests < 0)
+                throw new IllegalArgumentException("Limits must not be negative");
+            this.bucket = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond) : null;
+            this.semaphore = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+        }
+
+        void acquire() throws InterruptedException {
+            if (bucket != null)
+                bucket.take();
+            if (semaphore != null)
+                semaphore.acquire();
+        }
+
+        void release() {
+            if (semaphore != null)
+                semaphore.release();
+        }
+    }
+
+    /**
+     * Token bucket that holds at most one second worth of tokens, so that a burst after an idle period is bounded by the rate. Tokens may be taken ahead of
+     * time; the debt then determines how long the taker has to wait, which serves waiting threads in the order in which they arrived.
+     */
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double tokensPerSecond) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, tokensPerSecond);
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        void take() throws InterruptedException {
+            long waitNanos = reserve(System.nanoTime());
+            if (waitNanos > 0)
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+
+        /**
+         * @return the time the caller must wait before its token becomes available
+         */
+        synchronized long reserve(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+    }
+}
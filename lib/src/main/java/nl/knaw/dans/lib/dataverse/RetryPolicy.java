@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.client.utils.DateUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy for retrying requests that failed because of a transient problem: an I/O error, such as a connection reset or a timeout, or a response with one of
+ * the retryable status codes (by default 429, 502, 503 and 504). Only GET, PUT and DELETE requests are retried, unless {@link #setRetryPost(boolean)} is
+ * enabled; POST requests are generally not idempotent.
+ *
+ * Between attempts the client waits for an exponentially growing backoff with "full jitter", i.e. a random delay between zero and
+ * `min(maxBackoff, initialBackoff * multiplier^(attempt - 1))`. If the server sends a `Retry-After` header, that delay is used instead. Retrying stops when
+ * `maxAttempts` is reached or when the next attempt would start after `maxRetryDuration` has passed since the first one.
+ */
+public class RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(200);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final Duration DEFAULT_MAX_RETRY_DURATION = Duration.ofSeconds(60);
+    public static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(429, 502, 503, 504)));
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private Duration maxRetryDuration = DEFAULT_MAX_RETRY_DURATION;
+    private Set<Integer> retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+    private boolean retryPost = false;
+
+    /**
+     * @return a policy that never retries
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(1);
+        return policy;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts, including the first one; 1 disables retrying
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * @param initialBackoff the upper bound of the delay before the first retry
+     */
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * @param maxBackoff the upper bound of the delay before any retry
+     */
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * @param multiplier the factor by which the upper bound of the delay grows with each attempt
+     */
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public Duration getMaxRetryDuration() {
+        return maxRetryDuration;
+    }
+
+    /**
+     * @param maxRetryDuration the time budget for all attempts of one request together; no retry is started after it has been used up
+     */
+    public void setMaxRetryDuration(Duration maxRetryDuration) {
+        this.maxRetryDuration = maxRetryDuration;
+    }
+
+    public Set<Integer> getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+
+    /**
+     * @param retryableStatusCodes the HTTP status codes that indicate a transient problem on the server
+     */
+    public void setRetryableStatusCodes(Set<Integer> retryableStatusCodes) {
+        this.retryableStatusCodes = retryableStatusCodes;
+    }
+
+    public boolean isRetryPost() {
+        return retryPost;
+    }
+
+    /**
+     * @param retryPost whether to also retry POST requests; only enable this if the POST requests made are safe to repeat
+     */
+    public void setRetryPost(boolean retryPost) {
+        this.retryPost = retryPost;
+    }
+
+    boolean appliesTo(String method) {
+        switch (method) {
+            case "GET":
+            case "PUT":
+            case "DELETE":
+                return maxAttempts > 1;
+            case "POST":
+                return maxAttempts > 1 && retryPost;
+            default:
+                return false;
+        }
+    }
+
+    boolean isRetryableStatus(int status) {
+        return retryableStatusCodes.contains(status);
+    }
+
+    /**
+     * @param attempt the number of the attempt that just failed, starting at 1
+     * @return a random delay in milliseconds between zero and the capped exponential backoff for the attempt
+     */
+    long backoffMillis(int attempt) {
+        double ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() * Math.pow(multiplier, attempt - 1));
+        return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+    }
+
+    /**
+     * Parses the value of a `Retry-After` header, which is either a number of seconds or an HTTP date.
+     *
+     * @param value the header value, may be `null`
+     * @param now   the current time in milliseconds since the epoch
+     * @return the delay in milliseconds, or -1 if the value is absent or invalid
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null)
+            return -1;
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        }
+        catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(trimmed);
+            return date == null ? -1 : Math.max(0, date.getTime() - now);
+        }
+    }
+}
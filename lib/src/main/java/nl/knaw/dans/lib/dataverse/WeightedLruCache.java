@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Map that is bounded by the total weight of its values, rather than by their number. When a value is added and the total weight exceeds the maximum, the
+ * least recently used values are evicted. All methods are thread-safe.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+class WeightedLruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final LinkedHashMap<K, Weighted<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    /**
+     * @param maxWeight the maximum total weight
+     * @param weigher   computes the weight of a value; called once, when the value is added
+     */
+    WeightedLruCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Creates a cache of which the caller passes the weight of every value to {@link #put(Object, Object, long)}.
+     *
+     * @param maxWeight the maximum total weight
+     */
+    WeightedLruCache(long maxWeight) {
+        this(maxWeight, null);
+    }
+
+    synchronized V get(K key) {
+        Weighted<V> w = map.get(key);
+        return w == null ? null : w.value;
+    }
+
+    /**
+     * Adds or replaces a value, and evicts the least recently used values if the total weight exceeds the maximum.
+     *
+     * @return `false` if the value was not added because it alone is heavier than the maximum
+     */
+    boolean put(K key, V value) {
+        return put(key, value, weigher.applyAsLong(value));
+    }
+
+    /**
+     * Like {@link #put(Object, Object)}, but with a weight computed by the caller.
+     */
+    boolean put(K key, V value, long valueWeight) {
+        Weighted<V> added = new Weighted<>(value, valueWeight);
+        if (added.weight > maxWeight)
+            return false;
+        synchronized (this) {
+            Weighted<V> previous = map.put(key, added);
+            if (previous != null)
+                weight -= previous.weight;
+            weight += added.weight;
+            Iterator<Weighted<V>> eldest = map.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the value of `key` with `value`, but only if its current value is `expected`.
+     */
+    void replace(K key, V expected, V value) {
+        Weighted<V> replacement = new Weighted<>(value, weigher.applyAsLong(value));
+        synchronized (this) {
+            Weighted<V> current = map.get(key);
+            if (current != null && current.value == expected) {
+                map.put(key, replacement);
+                weight += replacement.weight - current.weight;
+            }
+        }
+    }
+
+    synchronized V remove(K key) {
+        Weighted<V> removed = map.remove(key);
+        if (removed == null)
+            return null;
+        weight -= removed.weight;
+        return removed.value;
+    }
+
+    synchronized void removeIf(BiPredicate<? super K, ? super V> predicate) {
+        Iterator<Map.Entry<K, Weighted<V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Weighted<V>> e = it.next();
+            if (predicate.test(e.getKey(), e.getValue().value)) {
+                weight -= e.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    private static class Weighted<V> {
+        private final V value;
+        private final long weight;
+
+        Weighted(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
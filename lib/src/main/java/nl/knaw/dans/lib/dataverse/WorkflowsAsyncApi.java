@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.workflow.ResumeMessage;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link WorkflowsApi}.
+ */
+public class WorkflowsAsyncApi extends AbstractAsyncApi {
+
+    private static final Path subPath = Paths.get("api/workflows/");
+
+    protected WorkflowsAsyncApi(HttpAsyncClientWrapper httpClientWrapper) {
+        super(httpClientWrapper);
+    }
+
+    /**
+     * @see WorkflowsApi#resume(String, ResumeMessage)
+     */
+    public CompletableFuture<DataverseHttpResponse<Object>> resume(String invocationId, ResumeMessage resumeMessage) {
+        return httpClientWrapper.postModelObjectAsJson(subPath.resolve(invocationId), resumeMessage, Object.class);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.model.file;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * A file stored in Dataverse. Properties that only apply to tabular files are `null` or 0 for other files. Properties that newer versions of Dataverse add
+ * are ignored.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DataFile {
+    private int id;
+    private String persistentId;
+    private String pidURL;
+    private String filename;
+    private String contentType;
+    private String friendlyType;
+    private long filesize;
+    private String description;
+    private String storageIdentifier;
+    private String originalFileFormat;
+    private String originalFormatLabel;
+    private long originalFileSize;
+    private String originalFileName;
+    private String unf;
+    private int rootDataFileId;
+    private int previousDataFileId;
+    private String md5;
+    private Checksum checksum;
+    private String creationDate;
+    private String publicationDate;
+    private List<String> categories;
+    private List<String> tabularTags;
+    private boolean tabularData;
+    private List<Object> varGroups;
+    private Boolean fileAccessRequest;
+    private int fileMetadataId;
+    private Embargo embargo;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getPersistentId() {
+        return persistentId;
+    }
+
+    public void setPersistentId(String persistentId) {
+        this.persistentId = persistentId;
+    }
+
+    public String getPidURL() {
+        return pidURL;
+    }
+
+    public void setPidURL(String pidURL) {
+        this.pidURL = pidURL;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getFriendlyType() {
+        return friendlyType;
+    }
+
+    public void setFriendlyType(String friendlyType) {
+        this.friendlyType = friendlyType;
+    }
+
+    public long getFilesize() {
+        return filesize;
+    }
+
+    public void setFilesize(long filesize) {
+        this.filesize = filesize;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getStorageIdentifier() {
+        return storageIdentifier;
+    }
+
+    public void setStorageIdentifier(String storageIdentifier) {
+        this.storageIdentifier = storageIdentifier;
+    }
+
+    public String getOriginalFileFormat() {
+        return originalFileFormat;
+    }
+
+    public void setOriginalFileFormat(String originalFileFormat) {
+        this.originalFileFormat = originalFileFormat;
+    }
+
+    public String getOriginalFormatLabel() {
+        return originalFormatLabel;
+    }
+
+    public void setOriginalFormatLabel(String originalFormatLabel) {
+        this.originalFormatLabel = originalFormatLabel;
+    }
+
+    public long getOriginalFileSize() {
+        return originalFileSize;
+    }
+
+    public void setOriginalFileSize(long originalFileSize) {
+        this.originalFileSize = originalFileSize;
+    }
+
+    public String getOriginalFileName() {
+        return originalFileName;
+    }
+
+    public void setOriginalFileName(String originalFileName) {
+        this.originalFileName = originalFileName;
+    }
+
+    @JsonProperty("UNF")
+    public String getUnf() {
+        return unf;
+    }
+
+    @JsonProperty("UNF")
+    public void setUnf(String unf) {
+        this.unf = unf;
+    }
+
+    public int getRootDataFileId() {
+        return rootDataFileId;
+    }
+
+    public void setRootDataFileId(int rootDataFileId) {
+        this.rootDataFileId = rootDataFileId;
+    }
+
+    public int getPreviousDataFileId() {
+        return previousDataFileId;
+    }
+
+    public void setPreviousDataFileId(int previousDataFileId) {
+        this.previousDataFileId = previousDataFileId;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
+    public Checksum getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(String creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public String getPublicationDate() {
+        return publicationDate;
+    }
+
+    public void setPublicationDate(String publicationDate) {
+        this.publicationDate = publicationDate;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public List<String> getTabularTags() {
+        return tabularTags;
+    }
+
+    public void setTabularTags(List<String> tabularTags) {
+        this.tabularTags = tabularTags;
+    }
+
+    public boolean isTabularData() {
+        return tabularData;
+    }
+
+    public void setTabularData(boolean tabularData) {
+        this.tabularData = tabularData;
+    }
+
+    public List<Object> getVarGroups() {
+        return varGroups;
+    }
+
+    public void setVarGroups(List<Object> varGroups) {
+        this.varGroups = varGroups;
+    }
+
+    public Boolean getFileAccessRequest() {
+        return fileAccessRequest;
+    }
+
+    public void setFileAccessRequest(Boolean fileAccessRequest) {
+        this.fileAccessRequest = fileAccessRequest;
+    }
+
+    public int getFileMetadataId() {
+        return fileMetadataId;
+    }
+
+    public void setFileMetadataId(int fileMetadataId) {
+        this.fileMetadataId = fileMetadataId;
+    }
+
+    public Embargo getEmbargo() {
+        return embargo;
+    }
+
+    public void setEmbargo(Embargo embargo) {
+        this.embargo = embargo;
+    }
+}
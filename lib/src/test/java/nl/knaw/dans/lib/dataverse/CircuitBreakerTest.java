@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CircuitBreakerTest {
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(20).toNanos();
+
+    private CircuitBreaker breaker;
+    private List<String> transitions;
+
+    @BeforeEach
+    public void setUp() {
+        breaker = new CircuitBreaker();
+        breaker.setSlidingWindowSize(4);
+        breaker.setMinimumNumberOfCalls(4);
+        breaker.setPermittedCallsInHalfOpenState(2);
+        breaker.setOpenDuration(Duration.ofMillis(50));
+        transitions = new ArrayList<>();
+        breaker.addListener((b, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    private void call(boolean success, long duration) throws CircuitBreakerOpenException {
+        breaker.acquirePermission();
+        breaker.onResult(success, duration);
+    }
+
+    @Test
+    public void staysClosedBelowFailureRate() throws Exception {
+        call(false, FAST);
+        call(true, FAST);
+        call(true, FAST);
+        call(true, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensAtFailureRateAndFailsFast() throws Exception {
+        call(false, FAST);
+        call(true, FAST);
+        call(false, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(true, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquirePermission());
+        assertEquals(1, transitions.size());
+    }
+
+    @Test
+    public void opensAtSlowCallRate() throws Exception {
+        for (int i = 0; i < 4; i++)
+            call(true, SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void onlyRecentCallsCount() throws Exception {
+        call(false, FAST);
+        call(false, FAST);
+        call(true, FAST);
+        call(true, FAST);
+        breaker.reset();
+        transitions.clear();
+        for (int i = 0; i < 10; i++)
+            call(i % 4 != 0, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() throws Exception {
+        for (int i = 0; i < 4; i++)
+            call(false, FAST);
+        Thread.sleep(60);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquirePermission());
+        breaker.onResult(true, FAST);
+        breaker.onResult(true, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void reopensAfterFailedProbes() throws Exception {
+        for (int i = 0; i < 4; i++)
+            call(false, FAST);
+        Thread.sleep(60);
+        call(false, FAST);
+        call(true, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", transitions.toString());
+    }
+}
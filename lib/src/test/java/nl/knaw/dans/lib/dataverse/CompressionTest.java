@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressionTest {
+    private static final String JSON = "{\"status\":\"OK\",\"data\":{\"message\":\"" + new String(new char[10_000]).replace('\0', 'x') + "\"}}";
+
+    private static byte[] gzip(String s) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String s) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static BasicHttpResponse response(byte[] body, String contentEncoding) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(body));
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.length));
+        if (contentEncoding != null)
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        return response;
+    }
+
+    @Test
+    public void compressedResponseIsAskedForExceptForRanges() {
+        HttpGet get = new HttpGet("http://localhost/api/datasets/1");
+        Compression.acceptCompressedResponse(get);
+        assertEquals("gzip, deflate", get.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+
+        HttpGet range = new HttpGet("http://localhost/api/access/datafile/1");
+        range.setHeader(HttpHeaders.RANGE, "bytes=100-");
+        Compression.acceptCompressedResponse(range);
+        assertNull(range.getFirstHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void gzipAndDeflateResponsesAreDecoded() throws Exception {
+        BasicHttpResponse gzipped = response(gzip(JSON), "gzip");
+        Compression.decodeResponse(gzipped);
+        assertEquals(JSON, EntityUtils.toString(gzipped.getEntity()));
+        assertNull(gzipped.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+        assertNull(gzipped.getFirstHeader(HttpHeaders.CONTENT_LENGTH));
+
+        BasicHttpResponse deflated = response(deflate(JSON), "deflate");
+        Compression.decodeResponse(deflated);
+        assertEquals(JSON, EntityUtils.toString(deflated.getEntity()));
+    }
+
+    @Test
+    public void uncompressedResponseIsLeftAlone() throws Exception {
+        BasicHttpResponse plain = response(JSON.getBytes(StandardCharsets.UTF_8), null);
+        Compression.decodeResponse(plain);
+        assertEquals(JSON, EntityUtils.toString(plain.getEntity()));
+        assertTrue(plain.containsHeader(HttpHeaders.CONTENT_LENGTH));
+
+        BasicHttpResponse identity = response(JSON.getBytes(StandardCharsets.UTF_8), "identity");
+        Compression.decodeResponse(identity);
+        assertEquals(JSON, EntityUtils.toString(identity.getEntity()));
+    }
+
+    @Test
+    public void largeRequestBodyIsCompressed() throws Exception {
+        HttpPut put = new HttpPut(URI.create("http://localhost/api/datasets/1/versions/:draft"));
+        put.setEntity(new StringEntity(JSON));
+
+        Compression.compressRequest(put, 1000);
+
+        assertEquals("gzip", put.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+        assertTrue(put.getEntity().isRepeatable());
+        assertTrue(put.getEntity().getContentLength() < JSON.length() / 10);
+        try (GZIPInputStream in = new GZIPInputStream(put.getEntity().getContent())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; )
+                out.write(buffer, 0, n);
+            assertEquals(JSON, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void smallRequestBodyIsNotCompressed() throws Exception {
+        HttpPut put = new HttpPut(URI.create("http://localhost/api/datasets/1/versions/:draft"));
+        put.setEntity(new StringEntity("{}"));
+
+        Compression.compressRequest(put, 1000);
+
+        assertFalse(put.containsHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("{}", EntityUtils.toString(put.getEntity()));
+    }
+
+    @Test
+    public void requestBodyIsOnlyCompressedForConfiguredEndpoints() throws Exception {
+        DataverseClientConfig config = new DataverseClientConfig(URI.create("http://localhost/"), "token");
+        config.setRequestCompressionEndpoints(Collections.singletonList("/api/datasets/*/versions/"));
+        config.setRequestCompressionThreshold(1000);
+        HttpPut matching = new HttpPut(URI.create("http://localhost/api/datasets/1/versions/:draft"));
+        matching.setEntity(new StringEntity(JSON));
+        HttpPut other = new HttpPut(URI.create("http://localhost/api/dataverses/root"));
+        other.setEntity(new StringEntity(JSON));
+
+        HttpClientWrapper.compressRequest(config, matching, Paths.get("api/datasets/1/versions/:draft"));
+        HttpClientWrapper.compressRequest(config, other, Paths.get("api/dataverses/root"));
+
+        assertTrue(matching.containsHeader(HttpHeaders.CONTENT_ENCODING));
+        assertFalse(other.containsHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+}
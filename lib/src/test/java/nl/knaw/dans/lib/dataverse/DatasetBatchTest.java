@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetBatchTest {
+
+    private static List<String> pids(int n) {
+        return IntStream.range(0, n).mapToObj(i -> "doi:10.5072/FK2/" + i).collect(Collectors.toList());
+    }
+
+    private static int number(String pid) {
+        return Integer.parseInt(pid.substring(pid.lastIndexOf('/') + 1));
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Test
+    public void resultsAreInInputOrder() throws Exception {
+        List<String> pids = pids(40);
+        List<BatchResult<Integer>> results = new ArrayList<>();
+
+        new DatasetBatch(null, pids, 4).run(pid -> {
+            int n = number(pid);
+            sleep((40 - n) % 7);
+            return n;
+        }, true, results::add);
+
+        assertEquals(pids, results.stream().map(BatchResult::getPersistentId).collect(Collectors.toList()));
+        for (int i = 0; i < 40; i++)
+            assertEquals(Integer.valueOf(i), results.get(i).getData());
+    }
+
+    @Test
+    public void resultsAsCompletedContainEveryDataset() throws Exception {
+        List<String> pids = pids(40);
+        List<BatchResult<Integer>> results = new ArrayList<>();
+
+        new DatasetBatch(null, pids, 4).run(pid -> {
+            sleep(number(pid) % 5);
+            return number(pid);
+        }, false, results::add);
+
+        assertEquals(40, results.size());
+        assertEquals(pids, results.stream().map(BatchResult::getPersistentId).sorted((a, b) -> number(a) - number(b)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void errorsAreCapturedPerDataset() throws Exception {
+        List<BatchResult<Integer>> results = new ArrayList<>();
+
+        new DatasetBatch(null, pids(10), 3).run(pid -> {
+            if (number(pid) % 3 == 0)
+                throw new DataverseException(404, "Not found", null);
+            if (number(pid) == 5)
+                throw new IOException("Connection reset");
+            return number(pid);
+        }, true, results::add);
+
+        assertEquals(10, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertNull(results.get(0).getData());
+        assertTrue(results.get(0).getError() instanceof DataverseException);
+        assertTrue(results.get(5).getError() instanceof IOException);
+        assertTrue(results.get(4).isSuccess());
+        assertEquals(5, results.stream().filter(BatchResult::isSuccess).count());
+    }
+
+    @Test
+    public void numberOfRequestsInFlightIsBounded() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        new DatasetBatch(null, pids(50), 3).run(pid -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(2);
+            inFlight.decrementAndGet();
+            return null;
+        }, false, r -> {
+        });
+
+        assertTrue(maxInFlight.get() <= 3);
+    }
+}
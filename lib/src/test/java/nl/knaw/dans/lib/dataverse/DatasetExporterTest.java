@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetExporterTest {
+
+    private static class ListSink implements ExportSink {
+        private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        private volatile ByteArrayOutputStream openEntry;
+
+        @Override
+        public OutputStream openEntry(String persistentId, String exporter) {
+            assertNull(openEntry);
+            openEntry = new ByteArrayOutputStream() {
+
+                @Override
+                public void close() {
+                    written.add(new String(toByteArray(), StandardCharsets.UTF_8));
+                    openEntry = null;
+                }
+            };
+            return openEntry;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void exportsAreWrittenInInputOrder() throws Exception {
+        Random random = new Random(1);
+        DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+            try {
+                Thread.sleep(random.nextInt(5));
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            out.write((pid + ":" + format).getBytes(StandardCharsets.UTF_8));
+        }, 4);
+        List<String> pids = IntStream.range(0, 20).mapToObj(i -> "doi:10.5072/" + i).collect(Collectors.toList());
+        ListSink sink = new ListSink();
+
+        List<ExportResult> results = exporter.export(pids, Arrays.asList("ddi", "schema.org"), sink);
+
+        List<String> expected = pids.stream().flatMap(p -> Arrays.asList(p + ":ddi", p + ":schema.org").stream()).collect(Collectors.toList());
+        assertEquals(expected, sink.written);
+        assertEquals(40, results.size());
+        assertTrue(results.stream().allMatch(ExportResult::isSuccess));
+        assertEquals("doi:10.5072/0:ddi".length(), results.get(0).getSize());
+    }
+
+    @Test
+    public void failedExportDoesNotAbortRun() throws Exception {
+        DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+            if (pid.equals("b"))
+                throw new DataverseException(404, "Dataset not found", null);
+            out.write(pid.getBytes(StandardCharsets.UTF_8));
+        }, 2);
+        ListSink sink = new ListSink();
+
+        List<ExportResult> results = exporter.export(Arrays.asList("a", "b", "c"), Collections.singletonList("ddi"), sink);
+
+        assertEquals(Arrays.asList("a", "c"), sink.written);
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(-1, results.get(1).getSize());
+        assertTrue(results.get(1).getError() instanceof DataverseException);
+        assertTrue(results.get(2).isSuccess());
+    }
+
+    @Test
+    public void exportFailingHalfwayLeavesNoEntryInSink() throws Exception {
+        DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+            out.write("first half,".getBytes(StandardCharsets.UTF_8));
+            if (pid.equals("a"))
+                throw new IOException("Connection reset");
+            out.write("second half".getBytes(StandardCharsets.UTF_8));
+        }, 1);
+        ListSink sink = new ListSink();
+
+        List<ExportResult> results = exporter.export(Arrays.asList("a", "b"), Collections.singletonList("ddi"), sink);
+
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(Collections.singletonList("first half,second half"), sink.written);
+    }
+
+    @Test
+    public void exportFailingHalfwayIsReportedAndSpillFilesAreRemoved() throws Exception {
+        int spillFilesBefore = countSpillFiles();
+        DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+            // Exports that arrive before their turn are spilled to temporary files
+            sleep(pid.equals("0") ? 50 : 0);
+            out.write(pid.getBytes(StandardCharsets.UTF_8));
+            if (pid.equals("3"))
+                throw new IOException("Connection reset");
+        }, 4);
+        ListSink sink = new ListSink();
+
+        List<ExportResult> results = exporter.export(Arrays.asList("0", "1", "2", "3", "4", "5"), Collections.singletonList("ddi"), sink);
+
+        assertFalse(results.get(3).isSuccess());
+        assertEquals("Connection reset", results.get(3).getError().getMessage());
+        assertEquals(Arrays.asList("0", "1", "2", "4", "5"), sink.written);
+        assertEquals(spillFilesBefore, countSpillFiles());
+    }
+
+    @Test
+    public void noMoreThanParallelismExportsAtTheSameTime() throws Exception {
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            inProgress.decrementAndGet();
+        }, 3);
+        List<String> pids = IntStream.range(0, 30).mapToObj(String::valueOf).collect(Collectors.toList());
+
+        exporter.export(pids, Collections.singletonList("ddi"), new ListSink());
+
+        assertTrue(maxInProgress.get() <= 3);
+    }
+
+    @Test
+    public void zipSinkContainsEveryExport() throws Exception {
+        Path zipFile = Files.createTempFile("exports", ".zip");
+        try {
+            DatasetExporter exporter = new DatasetExporter((pid, format, out) -> {
+                out.write((pid + ":" + format).getBytes(StandardCharsets.UTF_8));
+                if (pid.equals("doi:10.5072/C"))
+                    throw new IOException("Connection reset");
+            }, 2);
+            try (ExportSink sink = ExportSink.toZipFile(zipFile)) {
+                exporter.export(Arrays.asList("doi:10.5072/A", "doi:10.5072/B", "doi:10.5072/C"), Arrays.asList("ddi", "schema.org"), sink);
+            }
+
+            try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+                assertEquals(4, zip.size());
+                assertNull(zip.getEntry("doi_10.5072_C/ddi.xml"));
+                assertEquals("doi:10.5072/B:schema.org",
+                    IOUtils.toString(zip.getInputStream(zip.getEntry("doi_10.5072_B/schema.org.json")), StandardCharsets.UTF_8));
+            }
+        }
+        finally {
+            Files.delete(zipFile);
+        }
+    }
+
+    @Test
+    public void entryNameIsSafeAndHasExtensionOfFormat() {
+        assertEquals("doi_10.5072_FK2_ABC/ddi.xml", ExportSink.entryName("doi:10.5072/FK2/ABC", "ddi"));
+        assertEquals("doi_10.5072_FK2_ABC/dataverse_json.json", ExportSink.entryName("doi:10.5072/FK2/ABC", "dataverse_json"));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int countSpillFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("dataverse-export-"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetLockWatcherTest {
+    private final Map<String, String> locks = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+    private DatasetLockWatcher watcher;
+
+    @AfterEach
+    public void close() {
+        watcher.close();
+    }
+
+    private DatasetLockWatcher watcher() {
+        watcher = new DatasetLockWatcher(pid -> {
+            polls.computeIfAbsent(pid, p -> new AtomicInteger()).incrementAndGet();
+            if (pid.equals("broken"))
+                throw new IOException("Connection reset");
+            String lockType = locks.get(pid);
+            if (lockType == null)
+                return Collections.emptyList();
+            DatasetLock lock = new DatasetLock();
+            lock.setLockType(lockType);
+            return Collections.singletonList(lock);
+        }, DatasetPublisher.createScheduler(2), true);
+        watcher.setLockedPollIntervalMillis(5);
+        watcher.setUnlockedPollIntervalMillis(5);
+        return watcher;
+    }
+
+    @Test
+    public void listenersAreNotifiedOfLockChanges() throws Exception {
+        DatasetLockWatcher watcher = watcher();
+        List<String> changes = new CopyOnWriteArrayList<>();
+        CountDownLatch released = new CountDownLatch(1);
+        watcher.addListener((pid, from, to) -> {
+            changes.add(pid + " " + from + " -> " + to);
+            if (to.isEmpty())
+                released.countDown();
+        });
+        locks.put("doi:10.5072/A", "Ingest");
+        watcher.watch("doi:10.5072/A");
+
+        while (watcher.getLockTypes("doi:10.5072/A").isEmpty())
+            Thread.sleep(1);
+        locks.remove("doi:10.5072/A");
+
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        assertEquals(2, changes.size());
+        assertEquals("doi:10.5072/A [] -> [Ingest]", changes.get(0));
+        assertEquals("doi:10.5072/A [Ingest] -> []", changes.get(1));
+    }
+
+    @Test
+    public void failedPollIsReportedAndDatasetStaysWatched() throws Exception {
+        DatasetLockWatcher watcher = watcher();
+        CountDownLatch failures = new CountDownLatch(2);
+        watcher.addListener(new DatasetLockWatcher.Listener() {
+
+            @Override
+            public void locksChanged(String persistentId, Set<String> from, Set<String> to) {
+            }
+
+            @Override
+            public void pollFailed(String persistentId, Exception e) {
+                failures.countDown();
+            }
+        });
+
+        watcher.watch("broken");
+
+        assertTrue(failures.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton("broken"), watcher.getWatched());
+    }
+
+    @Test
+    public void unwatchedDatasetIsNoLongerPolled() throws Exception {
+        DatasetLockWatcher watcher = watcher();
+        watcher.watch("doi:10.5072/A");
+        while (!polls.containsKey("doi:10.5072/A"))
+            Thread.sleep(1);
+
+        watcher.unwatch("doi:10.5072/A");
+        Thread.sleep(20);
+        int count = polls.get("doi:10.5072/A").get();
+        Thread.sleep(50);
+
+        assertEquals(count, polls.get("doi:10.5072/A").get());
+        assertTrue(watcher.getWatched().isEmpty());
+    }
+
+    @Test
+    public void pollIntervalHasSmallJitter() {
+        watcher();
+        for (int i = 0; i < 100; i++) {
+            long delay = DatasetLockWatcher.jitter(1000);
+            assertTrue(delay >= 900 && delay <= 1100);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLock;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetPublicationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetPublisherTest {
+
+    /*
+     * Every dataset is locked for a given number of polls after it is published.
+     */
+    private static class FakeOperations implements DatasetPublisher.Operations {
+        private final Map<String, AtomicInteger> remainingLockedPolls = new ConcurrentHashMap<>();
+        private final AtomicInteger polls = new AtomicInteger();
+        private final String lockType;
+        private final int lockedPolls;
+
+        FakeOperations(String lockType, int lockedPolls) {
+            this.lockType = lockType;
+            this.lockedPolls = lockedPolls;
+        }
+
+        @Override
+        public DatasetPublicationResult publish(String persistentId, String updateType) {
+            remainingLockedPolls.put(persistentId, new AtomicInteger(lockedPolls));
+            DatasetPublicationResult result = new DatasetPublicationResult();
+            result.setIdentifier(persistentId);
+            return result;
+        }
+
+        @Override
+        public List<DatasetLock> getLocks(String persistentId) throws IOException {
+            polls.incrementAndGet();
+            if (persistentId.equals("broken"))
+                throw new IOException("Connection reset");
+            if (remainingLockedPolls.get(persistentId).getAndDecrement() <= 0)
+                return Collections.emptyList();
+            DatasetLock lock = new DatasetLock();
+            lock.setLockType(lockType);
+            return Collections.singletonList(lock);
+        }
+    }
+
+    private DatasetPublisher publisher;
+
+    @AfterEach
+    public void close() {
+        publisher.close();
+    }
+
+    private DatasetPublisher publisher(FakeOperations operations) {
+        publisher = new DatasetPublisher(operations, DatasetPublisher.createScheduler(2), true);
+        publisher.setInitialPollIntervalMillis(1);
+        publisher.setMaxPollIntervalMillis(5);
+        return publisher;
+    }
+
+    @Test
+    public void futureIsCompletedWhenLocksAreReleased() throws Exception {
+        FakeOperations operations = new FakeOperations("finalizePublication", 3);
+        DatasetPublisher publisher = publisher(operations);
+
+        DatasetPublicationResult result = publisher.publishAndAwait("doi:10.5072/A", "major").get(5, TimeUnit.SECONDS);
+
+        assertEquals("doi:10.5072/A", result.getIdentifier());
+        assertEquals(4, operations.polls.get());
+    }
+
+    @Test
+    public void manyDatasetsAreAwaitedOnFewThreads() throws Exception {
+        FakeOperations operations = new FakeOperations("Ingest", 5);
+        DatasetPublisher publisher = publisher(operations);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[500];
+        for (int i = 0; i < futures.length; i++)
+            futures[i] = publisher.publishAndAwait("doi:10.5072/" + i, "minor");
+        CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+
+        assertEquals(500 * 6, operations.polls.get());
+    }
+
+    @Test
+    public void locksOfOtherTypesAreIgnored() throws Exception {
+        FakeOperations operations = new FakeOperations("InReview", 100);
+        DatasetPublisher publisher = publisher(operations);
+
+        publisher.publishAndAwait("doi:10.5072/A", "major").get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, operations.polls.get());
+    }
+
+    @Test
+    public void futureFailsWhenPollFails() {
+        DatasetPublisher publisher = publisher(new FakeOperations("Ingest", 1));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> publisher.publishAndAwait("broken", "major").get(5, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void futureFailsAfterTimeout() {
+        DatasetPublisher publisher = publisher(new FakeOperations("Ingest", Integer.MAX_VALUE));
+        publisher.setTimeoutMillis(50);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> publisher.publishAndAwait("doi:10.5072/A", "major").get(5, TimeUnit.SECONDS));
+
+        assertSame(TimeoutException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void closeFailsTheFuturesOfAwaitedDatasets() throws Exception {
+        DatasetPublisher publisher = publisher(new FakeOperations("Ingest", Integer.MAX_VALUE));
+        CompletableFuture<DatasetPublicationResult> future = publisher.publishAndAwait("doi:10.5072/A", "major");
+        Thread.sleep(20);
+
+        publisher.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertSame(IllegalStateException.class, e.getCause().getClass());
+        e = assertThrows(ExecutionException.class, () -> publisher.awaitUnlocked("doi:10.5072/B").get(5, TimeUnit.SECONDS));
+        assertSame(IllegalStateException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void futureFailsWhenSharedSchedulerRejectsTheNextPoll() throws Exception {
+        ScheduledExecutorService scheduler = DatasetPublisher.createScheduler(1);
+        publisher = new DatasetPublisher(new FakeOperations("Ingest", Integer.MAX_VALUE), scheduler, false);
+        publisher.setInitialPollIntervalMillis(20);
+        CompletableFuture<DatasetPublicationResult> future = publisher.publishAndAwait("doi:10.5072/A", "major");
+        Thread.sleep(10);
+
+        // Delayed tasks still run after shutdown, but they cannot schedule new ones
+        scheduler.shutdown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertSame(RejectedExecutionException.class, e.getCause().getClass());
+        e = assertThrows(ExecutionException.class, () -> publisher.awaitUnlocked("doi:10.5072/B").get(5, TimeUnit.SECONDS));
+        assertSame(RejectedExecutionException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void pollIntervalGrowsUpToMaximum() {
+        DatasetPublisher publisher = publisher(new FakeOperations("Ingest", 0));
+        publisher.setInitialPollIntervalMillis(100);
+        publisher.setMaxPollIntervalMillis(1000);
+        publisher.setPollIntervalMultiplier(2);
+
+        long first = publisher.nextPollDelayMillis(0);
+        long third = publisher.nextPollDelayMillis(2);
+        long late = publisher.nextPollDelayMillis(50);
+
+        assertTrue(first >= 80 && first <= 120);
+        assertTrue(third >= 320 && third <= 480);
+        assertTrue(late >= 800 && late <= 1200);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetVersionCacheTest extends MapperFixture {
+    private static final String PID = "doi:10.5072/FK2/U6AEZM";
+
+    public DatasetVersionCacheTest() {
+        super("model/dataset");
+    }
+
+    private DatasetVersion version(int major, int minor, String state) throws Exception {
+        DatasetVersion version = mapper.readValue(new File("src/test/resources/model/dataset/DatasetVersion-no-files.json"), DatasetVersion.class);
+        version.setVersionNumber(major);
+        version.setVersionMinorNumber(minor);
+        version.setVersionState(state);
+        return version;
+    }
+
+    @Test
+    public void versionNumbersAreNormalized() {
+        assertEquals("2.0", DatasetVersionCache.versionNumber("2"));
+        assertEquals("2.1", DatasetVersionCache.versionNumber("2.1"));
+        assertNull(DatasetVersionCache.versionNumber(":latest-published"));
+        assertNull(DatasetVersionCache.versionNumber(":draft"));
+    }
+
+    @Test
+    public void publishedVersionIsFoundByNumber() throws Exception {
+        DatasetVersionCache cache = new DatasetVersionCache(10_000_000);
+        DatasetVersion version = version(2, 0, "RELEASED");
+
+        cache.put(PID, version, mapper);
+
+        assertSame(version, cache.get(PID, "2.0", mapper));
+        assertSame(version, cache.get(PID, "2", mapper));
+        assertNull(cache.get(PID, "1.0", mapper));
+        assertNull(cache.get(PID, ":latest-published", mapper));
+        assertNull(cache.get("doi:10.5072/FK2/OTHER", "2.0", mapper));
+    }
+
+    @Test
+    public void unpublishedVersionIsNotCached() throws Exception {
+        DatasetVersionCache cache = new DatasetVersionCache(10_000_000);
+
+        cache.put(PID, version(0, 0, "DRAFT"), mapper);
+        cache.put(PID, version(1, 0, "DEACCESSIONED"), mapper);
+
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void sizeIsEstimatedFromJsonRepresentation() throws Exception {
+        DatasetVersion version = version(2, 0, "RELEASED");
+        long size = DatasetVersionCache.estimateSize(mapper.writeValueAsBytes(version));
+        version.setTermsOfUse(new String(new char[10_000]).replace('\0', 'x'));
+
+        assertTrue(size > 1000);
+        assertTrue(DatasetVersionCache.estimateSize(mapper.writeValueAsBytes(version)) >= size + 10_000);
+    }
+
+    @Test
+    public void sizeIsEstimatedWithMapperOfClient() throws Exception {
+        DatasetVersion version = version(2, 0, "RELEASED");
+        ObjectMapper nonNullMapper = mapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        DatasetVersionCache cache = new DatasetVersionCache(10_000_000);
+
+        cache.put(PID, version, nonNullMapper);
+
+        assertEquals(DatasetVersionCache.estimateSize(nonNullMapper.writeValueAsBytes(version)), cache.getSizeBytes());
+        assertTrue(cache.getSizeBytes() < DatasetVersionCache.estimateSize(mapper.writeValueAsBytes(version)));
+    }
+
+    @Test
+    public void leastRecentlyUsedVersionsAreEvicted() throws Exception {
+        long size = DatasetVersionCache.estimateSize(mapper.writeValueAsBytes(version(1, 0, "RELEASED")));
+        DatasetVersionCache cache = new DatasetVersionCache(2 * size);
+        cache.put(PID, version(1, 0, "RELEASED"), mapper);
+        cache.put(PID, version(2, 0, "RELEASED"), mapper);
+        cache.get(PID, "1.0", mapper);
+
+        cache.put(PID, version(3, 0, "RELEASED"), mapper);
+
+        assertEquals(2, cache.getEntryCount());
+        assertNull(cache.get(PID, "2.0", mapper));
+        assertEquals(2 * size, cache.getSizeBytes());
+    }
+
+    @Test
+    public void invalidateRemovesVersionsOfDataset() throws Exception {
+        DatasetVersionCache cache = new DatasetVersionCache(10_000_000);
+        cache.put(PID, version(1, 0, "RELEASED"), mapper);
+        cache.put(PID, version(2, 0, "RELEASED"), mapper);
+        cache.put("doi:10.5072/FK2/OTHER", version(1, 0, "RELEASED"), mapper);
+
+        cache.invalidate(PID);
+
+        assertEquals(1, cache.getEntryCount());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetVersionDiskCacheTest extends MapperFixture {
+    private static final String PID = "doi:10.5072/FK2/U6AEZM";
+    private Path directory;
+
+    public DatasetVersionDiskCacheTest() {
+        super("model/dataset");
+    }
+
+    @BeforeEach
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("version-cache");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private static byte[] value(int i, int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length)
+            sb.append("{\"value\":").append(i).append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void valuesAreFoundAfterReopening() throws Exception {
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            for (int i = 0; i < 2000; i++)
+                cache.put(PID + " " + i + ".0", value(i, 100));
+            cache.put(PID + " 1.0", value(-1, 100));
+        }
+
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            assertEquals(2000, cache.getEntryCount());
+            assertArrayEquals(value(-1, 100), cache.get(PID + " 1.0"));
+            assertArrayEquals(value(1999, 100), cache.get(PID + " 1999.0"));
+            assertNull(cache.get(PID + " 2000.0"));
+        }
+    }
+
+    @Test
+    public void valuesAreStoredCompressed() throws Exception {
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            cache.put(PID + " 1.0", value(1, 100_000));
+
+            assertTrue(cache.getSizeBytes() < 10_000);
+        }
+    }
+
+    @Test
+    public void removedValuesStayRemovedAfterIndexIsLost() throws Exception {
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            cache.put(PID + " 1.0", value(1, 100));
+            cache.put("doi:10.5072/FK2/OTHER 1.0", value(2, 100));
+            cache.removeIf(k -> k.startsWith(PID + " "));
+        }
+        Files.delete(directory.resolve("versions.idx"));
+
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            assertEquals(1, cache.getEntryCount());
+            assertNull(cache.get(PID + " 1.0"));
+            assertNotNull(cache.get("doi:10.5072/FK2/OTHER 1.0"));
+        }
+    }
+
+    @Test
+    public void incompleteRecordAtEndIsDiscarded() throws Exception {
+        long size;
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            cache.put(PID + " 1.0", value(1, 100));
+            size = cache.getSizeBytes();
+            cache.put(PID + " 2.0", value(2, 100));
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve("versions.seg").toFile(), "rw")) {
+            segment.setLength(segment.length() - 5);
+        }
+
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            assertEquals(1, cache.getEntryCount());
+            assertEquals(size, cache.getSizeBytes());
+            assertArrayEquals(value(1, 100), cache.get(PID + " 1.0"));
+            assertNull(cache.get(PID + " 2.0"));
+        }
+    }
+
+    @Test
+    public void compactionDropsGarbageAndOldestValues() throws Exception {
+        try (DatasetVersionDiskCache cache = new DatasetVersionDiskCache(directory, 20_000)) {
+            for (int i = 0; i < 1000; i++)
+                cache.put(PID + " " + i + ".0", value(i, 100));
+
+            assertTrue(cache.getSizeBytes() <= 20_000);
+            assertTrue(cache.getEntryCount() < 1000);
+            assertNull(cache.get(PID + " 0.0"));
+            assertArrayEquals(value(999, 100), cache.get(PID + " 999.0"));
+        }
+    }
+
+    @Test
+    public void versionCacheFallsBackToDisk() throws Exception {
+        DatasetVersion version = mapper.readValue(new File("src/test/resources/model/dataset/DatasetVersion-no-files.json"), DatasetVersion.class);
+        version.setVersionNumber(2);
+        version.setVersionMinorNumber(0);
+        version.setVersionState("RELEASED");
+        try (DatasetVersionDiskCache diskCache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            new DatasetVersionCache(10_000_000, diskCache).put(PID, version, mapper);
+
+            DatasetVersionCache cache = new DatasetVersionCache(10_000_000, diskCache);
+            DatasetVersion cached = cache.get(PID, "2", mapper);
+
+            assertNotNull(cached);
+            assertEquals(version.getTermsOfUse(), cached.getTermsOfUse());
+            assertEquals(version.getMetadataBlocks().keySet(), cached.getMetadataBlocks().keySet());
+            assertEquals(1, cache.getEntryCount());
+        }
+    }
+
+    @Test
+    public void versionCacheDoesNotWriteCachedVersionAgain() throws Exception {
+        DatasetVersion version = mapper.readValue(new File("src/test/resources/model/dataset/DatasetVersion-no-files.json"), DatasetVersion.class);
+        version.setVersionNumber(2);
+        version.setVersionMinorNumber(0);
+        version.setVersionState("RELEASED");
+        try (DatasetVersionDiskCache diskCache = new DatasetVersionDiskCache(directory, 10_000_000)) {
+            DatasetVersionCache cache = new DatasetVersionCache(10_000_000, diskCache);
+            cache.put(PID, version, mapper);
+            long size = diskCache.getSizeBytes();
+
+            cache.put(PID, version, mapper);
+            new DatasetVersionCache(10_000_000, diskCache).put(PID, version, mapper);
+
+            assertEquals(size, diskCache.getSizeBytes());
+            assertEquals(1, diskCache.getEntryCount());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.sun.net.httpserver.HttpServer;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataverseAsyncClientTest {
+    private static final String VERSION = "{\"status\":\"OK\",\"data\":{\"versionNumber\":1,\"versionMinorNumber\":0,\"versionState\":\"RELEASED\"}}";
+
+    private static class CountingMetrics implements DataverseMetrics {
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        @Override
+        public void requestStarted(String method, String endpoint) {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public void requestCompleted(String method, String endpoint, int status, long durationNanos, long bytesSent, long bytesReceived) {
+            completed.incrementAndGet();
+        }
+
+        @Override
+        public void requestFailed(String method, String endpoint, Throwable cause, long durationNanos) {
+            failed.incrementAndGet();
+        }
+
+        int inFlight() {
+            return started.get() - completed.get() - failed.get();
+        }
+    }
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountingMetrics metrics = new CountingMetrics();
+    private final AtomicInteger responsesHandedOff = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService responseExecutor;
+    private CloseableHttpAsyncClient httpClient;
+    private DataverseAsyncClient client;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int status = 200;
+            byte[] body = VERSION.getBytes(StandardCharsets.UTF_8);
+            if (path.endsWith("/slow")) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else if (!path.contains("versions")) {
+                status = 404;
+                body = "{\"status\":\"ERROR\",\"message\":\"Not found\"}".getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        DataverseClientConfig config = new DataverseClientConfig(URI.create("http://localhost:" + server.getAddress().getPort() + "/"), "token");
+        config.setMetrics(metrics);
+        responseExecutor = Executors.newSingleThreadExecutor();
+        httpClient = HttpAsyncClients.createDefault();
+        client = new DataverseAsyncClient(config, httpClient, null, r -> {
+            responsesHandedOff.incrementAndGet();
+            responseExecutor.execute(r);
+        });
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        release.countDown();
+        client.close();
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        responseExecutor.shutdownNow();
+    }
+
+    @Test
+    public void responseIsDeserializedOnTheResponseExecutor() throws Exception {
+        DatasetVersion version = client.dataset("doi:10.5072/FK2/ABC").getVersion("1.0").get(10, TimeUnit.SECONDS).getData();
+
+        assertEquals("RELEASED", version.getVersionState());
+        assertEquals(1, responsesHandedOff.get());
+        assertEquals(1, metrics.completed.get());
+        assertEquals(0, metrics.inFlight());
+    }
+
+    @Test
+    public void non2xxStatusCompletesTheFutureWithADataverseException() {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.dataverse("missing").view().get(10, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof DataverseException);
+        assertEquals(404, ((DataverseException) e.getCause()).getStatus());
+        assertEquals(1, metrics.completed.get());
+        assertEquals(0, metrics.inFlight());
+    }
+
+    @Test
+    public void cancellingTheFutureAbortsTheRequestAndReportsIt() throws Exception {
+        CompletableFuture<?> future = client.dataset("doi:10.5072/FK2/ABC").getVersion("slow");
+        Thread.sleep(200);
+
+        assertTrue(future.cancel(true));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.failed.get() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, metrics.failed.get());
+        assertEquals(0, metrics.inFlight());
+        assertEquals(0, responsesHandedOff.get());
+    }
+
+    @Test
+    public void closeDoesNotCloseAClientOfTheCaller() throws Exception {
+        client.close();
+
+        assertTrue(httpClient.isRunning());
+        assertEquals("RELEASED", client.dataset("doi:10.5072/FK2/ABC").getVersion("1.0").get(10, TimeUnit.SECONDS).getData().getVersionState());
+    }
+}
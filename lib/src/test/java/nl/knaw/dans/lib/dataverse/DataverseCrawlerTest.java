@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseDatasetItem;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseItem;
+import nl.knaw.dans.lib.dataverse.model.dataverse.DataverseSubverseItem;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataverseCrawlerTest {
+
+    /*
+     * root
+     * +-- 1 (datasets 10, 11)
+     * |   +-- 3 (dataset 12, and 10 linked)
+     * +-- 2 (dataset 13)
+     */
+    private final Map<String, List<DataverseItem>> tree = new HashMap<>();
+
+    public DataverseCrawlerTest() {
+        tree.put("root", Arrays.asList(subverse(1), subverse(2)));
+        tree.put("1", Arrays.asList(dataset(10), dataset(11), subverse(3)));
+        tree.put("2", Collections.singletonList(dataset(13)));
+        tree.put("3", Arrays.asList(dataset(12), dataset(10)));
+    }
+
+    private static DataverseSubverseItem subverse(int id) {
+        return new DataverseSubverseItem("dv" + id, id);
+    }
+
+    private static DataverseDatasetItem dataset(int id) {
+        DataverseDatasetItem item = new DataverseDatasetItem();
+        item.setId(id);
+        return item;
+    }
+
+    private final List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+
+    private DataverseCrawler.ContentsFetcher fetcher() {
+        return aliasOrId -> {
+            fetched.add(aliasOrId);
+            return tree.get(aliasOrId);
+        };
+    }
+
+    @Test
+    public void findsEveryDatasetOnce() throws Exception {
+        List<Integer> found = new ArrayList<>();
+        DataverseCrawler crawler = new DataverseCrawler(fetcher(), new DataverseCrawlCheckpoint("root"), 3);
+        crawler.crawl(item -> found.add(item.getId()));
+        Collections.sort(found);
+        assertEquals(Arrays.asList(10, 11, 12, 13), found);
+        assertEquals(4, fetched.size());
+        DataverseCrawlCheckpoint checkpoint = crawler.getCheckpoint();
+        assertTrue(checkpoint.isDone());
+        assertEquals(new TreeSet<>(Arrays.asList("root", "1", "2", "3")), new TreeSet<>(checkpoint.getVisitedDataverses()));
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        DataverseCrawlCheckpoint checkpoint = new DataverseCrawlCheckpoint();
+        checkpoint.getPendingDataverses().add("3");
+        checkpoint.getVisitedDataverses().addAll(Arrays.asList("root", "1", "2"));
+        checkpoint.getSeenDatasets().addAll(Arrays.asList(10, 11, 13));
+        List<Integer> found = new ArrayList<>();
+        new DataverseCrawler(fetcher(), checkpoint, 2).crawl(item -> found.add(item.getId()));
+        assertEquals(Collections.singletonList(12), found);
+        assertEquals(Collections.singletonList("3"), fetched);
+    }
+
+    @Test
+    public void streamsDatasets() {
+        DataverseCrawler crawler = new DataverseCrawler(fetcher(), new DataverseCrawlCheckpoint("root"), 2);
+        try (Stream<DataverseDatasetItem> stream = crawler.stream()) {
+            Set<Integer> ids = stream.map(DataverseItem::getId).collect(Collectors.toCollection(TreeSet::new));
+            assertEquals(new TreeSet<>(Arrays.asList(10, 11, 12, 13)), ids);
+        }
+    }
+
+    @Test
+    public void failureAbortsCrawl() {
+        DataverseCrawler crawler = new DataverseCrawler(aliasOrId -> {
+            if (aliasOrId.equals("2"))
+                throw new IOException("boom");
+            return tree.get(aliasOrId);
+        }, new DataverseCrawlCheckpoint("root"), 2);
+        assertThrows(IOException.class, () -> crawler.crawl(item -> {
+        }));
+        assertTrue(crawler.getCheckpoint().getPendingDataverses().contains("2"));
+    }
+
+    @Test
+    public void streamReportsFailure() {
+        DataverseCrawler crawler = new DataverseCrawler(aliasOrId -> {
+            throw new IOException("boom");
+        }, new DataverseCrawlCheckpoint("root"), 2);
+        try (Stream<DataverseDatasetItem> stream = crawler.stream()) {
+            assertThrows(CompletionException.class, stream::count);
+        }
+    }
+
+    @Test
+    public void crawlerCanOnlyBeUsedOnce() throws Exception {
+        DataverseCrawler crawler = new DataverseCrawler(fetcher(), new DataverseCrawlCheckpoint("root"), 1);
+        crawler.crawl(item -> {
+        });
+        assertThrows(IllegalStateException.class, () -> crawler.crawl(item -> {
+        }));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataverseResponseCacheTest {
+    private static final String ENDPOINT = "api/dataverses/{id}";
+
+    private static HttpResponse response(String... headers) throws Exception {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        for (int i = 0; i < headers.length; i += 2)
+            response.setHeader(headers[i], headers[i + 1]);
+        response.setEntity(new StringEntity("{\"status\":\"OK\"}"));
+        return response;
+    }
+
+    private static byte[] body(int size) {
+        return new byte[size];
+    }
+
+    @Test
+    public void freshResponseIsReturnedWithBody() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ofMinutes(1));
+        byte[] body = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+
+        cache.put("k", ENDPOINT, "api/dataverses/root", response(HttpHeaders.ETAG, "\"v1\""), body);
+
+        DataverseResponseCache.Entry entry = cache.get("k");
+        assertTrue(entry.isFresh());
+        HttpResponse cached = entry.toHttpResponse();
+        assertEquals("{\"status\":\"OK\"}", EntityUtils.toString(cached.getEntity()));
+        assertEquals("\"v1\"", cached.getFirstHeader(HttpHeaders.ETAG).getValue());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponseIsEvicted() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(3 * (1000 + 256), Duration.ofMinutes(1));
+        cache.put("a", ENDPOINT, "r", response(), body(1000));
+        cache.put("b", ENDPOINT, "r", response(), body(1000));
+        cache.put("c", ENDPOINT, "r", response(), body(1000));
+        cache.get("a");
+
+        cache.put("d", ENDPOINT, "r", response(), body(1000));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(3 * (1000 + 256), cache.getSizeBytes());
+    }
+
+    @Test
+    public void noStoreAndNoCacheWithoutValidatorsAreNotStored() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ofMinutes(1));
+
+        cache.put("a", ENDPOINT, "r", response(HttpHeaders.CACHE_CONTROL, "no-store"), body(10));
+        cache.put("b", ENDPOINT, "r", response(HttpHeaders.CACHE_CONTROL, "no-cache"), body(10));
+        cache.put("c", ENDPOINT, "r", response(HttpHeaders.CACHE_CONTROL, "no-cache", HttpHeaders.ETAG, "\"v1\""), body(10));
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertFalse(cache.get("c").isFresh());
+        assertTrue(cache.get("c").hasValidators());
+    }
+
+    @Test
+    public void maxAgeOverridesConfiguredTimeToLive() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ZERO);
+        cache.setEndpointTimeToLive("api/dataverses", Duration.ZERO);
+
+        cache.put("a", ENDPOINT, "r", response(HttpHeaders.CACHE_CONTROL, "public, max-age=60"), body(10));
+
+        assertTrue(cache.get("a").isFresh());
+    }
+
+    @Test
+    public void endpointTimeToLiveIsUsed() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ofMinutes(1));
+        cache.setEndpointTimeToLive("api/dataverses/*", Duration.ZERO);
+
+        cache.put("a", ENDPOINT, "r", response(HttpHeaders.LAST_MODIFIED, "Tue, 18 Oct 2022 10:00:00 GMT"), body(10));
+
+        assertFalse(cache.get("a").isFresh());
+    }
+
+    @Test
+    public void refreshStartsTimeToLiveAgain() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ZERO);
+        cache.put("a", ENDPOINT, "r", response(HttpHeaders.ETAG, "\"v1\""), body(10));
+        DataverseResponseCache.Entry stale = cache.get("a");
+
+        cache.refresh("a", stale, ENDPOINT, new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_MODIFIED, "Not Modified") {{
+            setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+        }});
+
+        assertTrue(cache.get("a").isFresh());
+        assertEquals("\"v1\"", cache.get("a").getEtag());
+    }
+
+    @Test
+    public void invalidateRemovesResponsesAboutResource() throws Exception {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ofMinutes(1));
+        cache.put("a", ENDPOINT, "api/datasets/:persistentId=doi:10.5072/A", response(), body(10));
+        cache.put("b", ENDPOINT, "api/datasets/:persistentId=doi:10.5072/A", response(), body(10));
+        cache.put("c", ENDPOINT, "api/datasets/:persistentId=doi:10.5072/B", response(), body(10));
+
+        cache.invalidate("api/datasets/:persistentId=doi:10.5072/A");
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(10 + 256, cache.getSizeBytes());
+    }
+
+    @Test
+    public void resourceIncludesPersistentIdentifier() {
+        assertEquals("api/datasets/:persistentId=doi:10.5072/A", DataverseResponseCache.resource(Paths.get("api/datasets/:persistentId/versions/:latest"),
+            URI.create("https://demo.dataverse.org/api/datasets/:persistentId/versions/:latest?persistentId=doi%3A10.5072%2FA")));
+        assertEquals("api/dataverses/root", DataverseResponseCache.resource(Paths.get("api/dataverses/root/contents"),
+            URI.create("https://demo.dataverse.org/api/dataverses/root/contents")));
+    }
+
+    @Test
+    public void keyDependsOnTokenWithoutContainingIt() {
+        URI uri = URI.create("https://demo.dataverse.org/api/dataverses/root");
+
+        String key = DataverseResponseCache.key(uri, "secret-token");
+
+        assertEquals(key, DataverseResponseCache.key(uri, "secret-token"));
+        assertNotEquals(key, DataverseResponseCache.key(uri, "other-token"));
+        assertFalse(key.contains("secret-token"));
+    }
+
+    @Test
+    public void locksAreExcludedByDefault() {
+        DataverseResponseCache cache = new DataverseResponseCache(10_000, Duration.ofMinutes(1));
+
+        assertFalse(cache.isCacheable("api/datasets/:persistentId/locks"));
+        assertTrue(cache.isCacheable("api/datasets/:persistentId/versions/{version}"));
+    }
+}
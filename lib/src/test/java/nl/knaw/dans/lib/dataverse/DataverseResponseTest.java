@@ -20,6 +20,7 @@ import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
 
 public class DataverseResponseTest extends MapperFixture {
@@ -38,6 +39,32 @@ public class DataverseResponseTest extends MapperFixture {
         Assertions.assertEquals("Dataverse Name", r.getData().getName());
     }
 
+    @Test
+    public void envelopeIsDeserializedOnlyOnce() throws Exception {
+        DataverseResponse<Dataverse> r =
+            new DataverseResponse<>(FileUtils.readFileToString(getTestJsonFileFor(classUnderTest), StandardCharsets.UTF_8),
+                mapper, Dataverse.class);
+        Assertions.assertSame(r.getEnvelope(), r.getEnvelope());
+        Assertions.assertSame(r.getEnvelope().getData(), r.getData());
+        Assertions.assertSame(r.getEnvelopeAsJson(), r.getEnvelopeAsJson());
+    }
+
+    @Test
+    public void streamedDataverseViewResponseCanBeDeserialized() throws Exception {
+        DataverseResponse<Dataverse> r =
+            new DataverseResponse<>(new FileInputStream(getTestJsonFileFor(classUnderTest)), mapper, Dataverse.class);
+        Assertions.assertEquals("root", r.getData().getAlias());
+        Assertions.assertEquals("Dataverse Name", r.getData().getName());
+    }
+
+    @Test
+    public void streamedResponseHasNoRawBody() throws Exception {
+        DataverseResponse<Dataverse> r =
+            new DataverseResponse<>(new FileInputStream(getTestJsonFileFor(classUnderTest)), mapper, Dataverse.class);
+        Assertions.assertThrows(IllegalStateException.class, r::getEnvelopeAsString);
+        Assertions.assertThrows(IllegalStateException.class, r::getEnvelopeAsJson);
+    }
+
 //    @Test
 //    public void nestedTypeParametersCanBeDeserialized() throws Exception {
 //        DataverseResponse<List<DatasetVersion>> r = new DataverseResponse<>(FileUtils.readFileToString(new File("src/test/resources/dataverse-response/test2.json"), StandardCharsets.UTF_8),
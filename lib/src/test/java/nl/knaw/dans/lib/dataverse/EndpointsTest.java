@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EndpointsTest {
+
+    @Test
+    public void dataverseAliasIsReplaced() {
+        assertEquals("api/dataverses/{id}/contents", Endpoints.template(Paths.get("api/dataverses/root/contents")));
+    }
+
+    @Test
+    public void persistentIdPlaceholderIsKept() {
+        assertEquals("api/datasets/:persistentId/versions/{version}", Endpoints.template(Paths.get("api/datasets/:persistentId/versions/1.0")));
+        assertEquals("api/datasets/:persistentId/versions/{version}", Endpoints.template(Paths.get("api/datasets/:persistentId/versions/:latest")));
+    }
+
+    @Test
+    public void numericIdsAreReplaced() {
+        assertEquals("api/access/datafile/{id}", Endpoints.template(Paths.get("api/access/datafile/42")));
+    }
+
+    @Test
+    public void literalSegmentsAfterCollectionAreKept() {
+        assertEquals("api/datasets/export", Endpoints.template(Paths.get("api/datasets/export")));
+    }
+}
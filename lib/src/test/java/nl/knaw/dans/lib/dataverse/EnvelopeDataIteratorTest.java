@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.sun.net.httpserver.HttpServer;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EnvelopeDataIteratorTest extends MapperFixture {
+
+    protected EnvelopeDataIteratorTest() {
+        super("");
+    }
+
+    private EnvelopeDataIterator<FileMeta> iterate(String body) throws IOException {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(body));
+        return new EnvelopeDataIterator<>(response, mapper.getFactory().createParser(response.getEntity().getContent()), mapper.readerFor(FileMeta.class));
+    }
+
+    @Test
+    public void elementsAreReadOneByOne() throws Exception {
+        EnvelopeDataIterator<FileMeta> iterator = iterate("{\"status\":\"OK\",\"data\":[{\"label\":\"a.txt\",\"dataFile\":{\"id\":1}},{\"label\":\"b.txt\",\"dataFile\":{\"id\":2}}]}");
+        List<String> labels = new ArrayList<>();
+        iterator.forEachRemaining(f -> labels.add(f.getLabel()));
+        assertEquals("[a.txt, b.txt]", labels.toString());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void fieldsBeforeDataAreSkipped() throws Exception {
+        EnvelopeDataIterator<FileMeta> iterator = iterate("{\"status\":\"OK\",\"message\":{\"x\":[1,2]},\"data\":[{\"label\":\"a.txt\"}]}");
+        assertEquals("a.txt", iterator.next().getLabel());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void emptyDataHasNoElements() throws Exception {
+        assertFalse(iterate("{\"status\":\"OK\",\"data\":[]}").hasNext());
+    }
+
+    @Test
+    public void dataThatIsNotAnArrayIsRejected() {
+        assertThrows(IOException.class, () -> iterate("{\"status\":\"OK\",\"data\":{}}"));
+        assertThrows(IOException.class, () -> iterate("{\"status\":\"OK\"}"));
+    }
+
+    @Test
+    public void unknownPropertiesOfElementsAreIgnored() throws Exception {
+        EnvelopeDataIterator<FileMeta> iterator = iterate("{\"status\":\"OK\",\"data\":[{\"label\":\"a.txt\",\"noSuchProperty\":1,\"dataFile\":{\"id\":1,\"noSuchProperty\":{}}}]}");
+        assertEquals("a.txt", iterator.next().getLabel());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void invalidElementIsThrownUnchecked() throws Exception {
+        EnvelopeDataIterator<FileMeta> iterator = iterate("{\"status\":\"OK\",\"data\":[{\"label\":{\"x\":1}}]}");
+        assertThrows(UncheckedIOException.class, iterator::next);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void closingStreamEarlyDiscardsConnectionInsteadOfReadingRestOfBody() throws Exception {
+        AtomicBoolean bodyWrittenCompletely = new AtomicBoolean();
+        CountDownLatch handled = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/datasets/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("{\"status\":\"OK\",\"data\":[".getBytes(StandardCharsets.UTF_8));
+                byte[] element = "{\"label\":\"file.txt\",\"dataFile\":{\"id\":1}},".getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < 5_000_000; i++)
+                    out.write(element);
+                out.write("{\"label\":\"last.txt\"}]}".getBytes(StandardCharsets.UTF_8));
+                bodyWrittenCompletely.set(true);
+            }
+            catch (IOException e) {
+                // The client discarded the connection
+            }
+            finally {
+                handled.countDown();
+            }
+        });
+        server.start();
+        try (DataverseClient client = new DataverseClient(new DataverseClientConfig(URI.create("http://localhost:" + server.getAddress().getPort() + "/"), "token"))) {
+            try (Stream<FileMeta> files = client.dataset("doi:10.5072/FK2/ABCDEF").streamFiles(":latest")) {
+                assertEquals("file.txt", files.findFirst().get().getLabel());
+            }
+            assertTrue(handled.await(30, TimeUnit.SECONDS));
+            assertFalse(bodyWrittenCompletely.get());
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+}
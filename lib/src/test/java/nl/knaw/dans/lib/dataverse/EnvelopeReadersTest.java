@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataverse.Dataverse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EnvelopeReadersTest extends MapperFixture {
+
+    protected EnvelopeReadersTest() {
+        super("");
+    }
+
+    @Test
+    public void sameSignatureYieldsSameReader() {
+        EnvelopeReaders readers = new EnvelopeReaders(mapper);
+        assertSame(readers.get(Dataverse.class), readers.get(Dataverse.class));
+        assertSame(readers.get(List.class, DatasetVersion.class), readers.get(List.class, DatasetVersion.class));
+    }
+
+    @Test
+    public void differentSignaturesYieldDifferentReaders() {
+        EnvelopeReaders readers = new EnvelopeReaders(mapper);
+        assertNotSame(readers.get(DatasetVersion.class), readers.get(List.class, DatasetVersion.class));
+    }
+
+    @Test
+    public void moreThanOneNestedParameterIsRejected() {
+        EnvelopeReaders readers = new EnvelopeReaders(mapper);
+        assertThrows(IllegalArgumentException.class, () -> readers.get(List.class, List.class, DatasetVersion.class));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileApiTest {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final int LARGE = 20 * 1024 * 1024 + 12345;
+
+    /*
+     * Serves the content of file 1, honoring range requests unless told otherwise.
+     */
+    private volatile byte[] content;
+    private volatile boolean ignoreRange;
+    private volatile boolean hideSize;
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private DataverseClient client;
+    private Path file;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/access/datafile/1", this::serve);
+        server.start();
+        client = new DataverseClient(new DataverseClientConfig(URI.create("http://localhost:" + server.getAddress().getPort() + "/"), "token"));
+        file = Files.createTempFile("download", ".bin");
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(String.valueOf(range));
+        byte[] body = content;
+        int first = 0;
+        int last = body.length - 1;
+        int status = 200;
+        if (range != null && !ignoreRange) {
+            Matcher m = RANGE.matcher(range);
+            assertTrue(m.matches());
+            first = Integer.parseInt(m.group(1));
+            if (first >= body.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            if (!m.group(2).isEmpty())
+                last = Math.min(last, Integer.parseInt(m.group(2)));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + (hideSize ? "*" : Integer.toString(body.length)));
+        }
+        int length = last - first + 1;
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, first, length);
+        }
+    }
+
+    @Test
+    public void downloadToReplacesExistingFile() throws Exception {
+        content = randomBytes(100_000);
+        Files.write(file, randomBytes(200_000));
+
+        assertEquals(content.length, client.file(1).downloadTo(file));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+
+    @Test
+    public void downloadToChannelCopiesContent() throws Exception {
+        content = randomBytes(300_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(content.length, client.file(1).downloadTo(Channels.newChannel(out)));
+
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+    }
+
+    @Test
+    public void resumeDownloadToAppendsMissingBytes() throws Exception {
+        content = randomBytes(300_000);
+        Files.write(file, Arrays.copyOf(content, 120_000));
+
+        assertEquals(180_000, client.file(1).resumeDownloadTo(file));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        assertEquals(Arrays.asList("bytes=120000-"), ranges);
+    }
+
+    @Test
+    public void resumeDownloadToDownloadsEverythingIfServerIgnoresRange() throws Exception {
+        content = randomBytes(300_000);
+        ignoreRange = true;
+        Files.write(file, Arrays.copyOf(content, 120_000));
+
+        assertEquals(content.length, client.file(1).resumeDownloadTo(file));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+
+    @Test
+    public void resumeDownloadToWithUnknownSizeAppendsMissingBytes() throws Exception {
+        content = randomBytes(300_000);
+        hideSize = true;
+        Files.write(file, Arrays.copyOf(content, 120_000));
+
+        assertEquals(180_000, client.file(1).resumeDownloadTo(file));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+
+    @Test
+    public void resumeDownloadToOfCompleteFileWritesNothing() throws Exception {
+        content = randomBytes(300_000);
+        Files.write(file, content);
+
+        assertEquals(0, client.file(1).resumeDownloadTo(file));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+    }
+
+    @Test
+    public void downloadInParallelToDownloadsPartsConcurrently() throws Exception {
+        content = randomBytes(LARGE);
+
+        assertEquals(content.length, client.file(1).downloadInParallelTo(file, 3));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        assertTrue(ranges.size() > 2);
+    }
+
+    @Test
+    public void downloadInParallelToUsesOneRequestIfServerIgnoresRange() throws Exception {
+        content = randomBytes(LARGE);
+        ignoreRange = true;
+
+        assertEquals(content.length, client.file(1).downloadInParallelTo(file, 3));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void downloadInParallelToWithUnknownSizeDownloadsTheRest() throws Exception {
+        content = randomBytes(LARGE);
+        hideSize = true;
+
+        assertEquals(content.length, client.file(1).downloadInParallelTo(file, 3));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        assertEquals(Arrays.asList("bytes=0-8388607", "bytes=8388608-"), ranges);
+    }
+
+    @Test
+    public void downloadInParallelToWithUnknownSizeOfSmallFileUsesOneRequest() throws Exception {
+        content = randomBytes(100_000);
+        hideSize = true;
+
+        assertEquals(content.length, client.file(1).downloadInParallelTo(file, 3));
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void downloadInParallelToOfEmptyFileWritesNothing() throws Exception {
+        content = new byte[0];
+        Files.write(file, randomBytes(1000));
+
+        assertEquals(0, client.file(1).downloadInParallelTo(file, 3));
+
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void contentRangeIsParsed() {
+        assertTrue(Arrays.equals(new long[] { 0, 99, 1000 }, FileApi.parseContentRange("bytes 0-99/1000")));
+        assertTrue(Arrays.equals(new long[] { 100, 199, -1 }, FileApi.parseContentRange("bytes 100-199/*")));
+    }
+
+    @Test
+    public void invalidContentRangeYieldsNull() {
+        assertNull(FileApi.parseContentRange(null));
+        assertNull(FileApi.parseContentRange("bytes */1000"));
+        assertNull(FileApi.parseContentRange("items 0-1/2"));
+    }
+
+    @Test
+    public void copyWritesAllBytesToChannel() throws Exception {
+        byte[] content = randomBytes(300_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(content.length, FileApi.copy(new ByteArrayInputStream(content), Channels.newChannel(out)));
+        assertTrue(Arrays.equals(content, out.toByteArray()));
+    }
+
+    @Test
+    public void transferWritesAtPosition() throws Exception {
+        byte[] content = randomBytes(2_000_000);
+        Path file = Files.createTempFile("transfer", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Nothing is written beyond the end of the file
+            assertEquals(0, FileApi.transfer(new ByteArrayInputStream(content, 1_000_000, 1_000_000), channel, 1_000_000));
+            channel.write(ByteBuffer.wrap(new byte[1]), content.length - 1);
+            assertEquals(1_000_000, FileApi.transfer(new ByteArrayInputStream(content, 1_000_000, 1_000_000), channel, 1_000_000));
+            assertEquals(1_000_000, FileApi.transfer(new ByteArrayInputStream(content, 0, 1_000_000), channel, 0));
+            assertTrue(Arrays.equals(content, Files.readAllBytes(file)));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    private static byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HttpClientWrapperTest {
+
+    private static class RecordingMetrics implements DataverseMetrics {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void requestStarted(String method, String endpoint) {
+            events.add("started");
+        }
+
+        @Override
+        public void requestCompleted(String method, String endpoint, int status, long durationNanos, long bytesSent, long bytesReceived) {
+            events.add("completed");
+        }
+
+        @Override
+        public void requestFailed(String method, String endpoint, Throwable cause, long durationNanos) {
+            events.add("failed " + cause.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    public void runtimeExceptionIsReportedAsFailure() throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        DataverseClientConfig config = new DataverseClientConfig(URI.create("http://localhost:1/"), "token");
+        config.setMetrics(metrics);
+        DataverseClient client = new DataverseClient(config);
+        // A closed connection pool makes the HttpClient throw an IllegalStateException
+        client.close();
+
+        assertThrows(IllegalStateException.class, () -> client.dataverse("root").view());
+
+        assertEquals(2, metrics.events.size());
+        assertEquals("started", metrics.events.get(0));
+        assertEquals("failed IllegalStateException", metrics.events.get(1));
+    }
+
+    @Test
+    public void httpClientDoesNotRetryUnderneathTheRetryPolicy() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            // Accepts connections and closes them without responding, which the HttpClient sees as a NoHttpResponseException
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try (Socket socket = serverSocket.accept()) {
+                        connections.incrementAndGet();
+                        socket.getInputStream().read();
+                    }
+                    catch (IOException e) {
+                        // closed
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            DataverseClientConfig config = new DataverseClientConfig(URI.create("http://localhost:" + serverSocket.getLocalPort() + "/"), "token");
+            config.setRetryPolicy(RetryPolicy.none());
+
+            try (DataverseClient client = new DataverseClient(config)) {
+                assertThrows(IOException.class, () -> client.dataverse("root").view());
+            }
+        }
+
+        assertEquals(1, connections.get());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import nl.knaw.dans.lib.dataverse.model.dataset.CompoundField;
+import nl.knaw.dans.lib.dataverse.model.dataset.ControlledMultiValueField;
+import nl.knaw.dans.lib.dataverse.model.dataset.ControlledSingleValueField;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataBlock;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.PrimitiveMultiValueField;
+import nl.knaw.dans.lib.dataverse.model.dataset.PrimitiveSingleValueField;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Verifies that the deserializer produces exactly the fields in the fixtures, by serializing the result again and comparing it with the original JSON.
+ */
+public class MetadataFieldDeserializerTest extends MapperFixture {
+
+    protected MetadataFieldDeserializerTest() {
+        super("model/dataset/");
+    }
+
+    @Test
+    public void primitiveSingleValueFieldIsIdenticalToFixture() throws Exception {
+        assertFieldIdenticalToFixture(PrimitiveSingleValueField.class);
+    }
+
+    @Test
+    public void primitiveMultiValueFieldIsIdenticalToFixture() throws Exception {
+        assertFieldIdenticalToFixture(PrimitiveMultiValueField.class);
+    }
+
+    @Test
+    public void controlledSingleValueFieldIsIdenticalToFixture() throws Exception {
+        assertFieldIdenticalToFixture(ControlledSingleValueField.class);
+    }
+
+    @Test
+    public void controlledMultiValueFieldIsIdenticalToFixture() throws Exception {
+        assertFieldIdenticalToFixture(ControlledMultiValueField.class);
+    }
+
+    @Test
+    public void compoundFieldIsIdenticalToFixture() throws Exception {
+        assertFieldIdenticalToFixture(CompoundField.class);
+    }
+
+    @Test
+    public void metadataBlockIsIdenticalToFixture() throws Exception {
+        File f = getTestJsonFileFor(MetadataBlock.class);
+        assertEquals(mapper.readTree(f), mapper.valueToTree(mapper.readValue(f, MetadataBlock.class)));
+    }
+
+    @Test
+    public void metadataBlocksOfDatasetVersionAreIdenticalToFixture() throws Exception {
+        File f = getTestJsonFileFor(DatasetVersion.class, "no-files");
+        JsonNode expected = mapper.readTree(f).get("metadataBlocks");
+        DatasetVersion dsv = mapper.readValue(f, DatasetVersion.class);
+        assertEquals(expected, mapper.valueToTree(dsv.getMetadataBlocks()));
+    }
+
+    @Test
+    public void valueBeforeTypeClassIsBuffered() throws Exception {
+        String json = "{\"value\": [{\"authorName\": {\"value\": \"Test\", \"typeClass\": \"primitive\", \"multiple\": false, \"typeName\": \"authorName\"}}],"
+            + " \"typeName\": \"author\", \"typeClass\": \"compound\", \"multiple\": true}";
+        MetadataField f = mapper.readValue(json, MetadataField.class);
+        assertEquals(CompoundField.class, f.getClass());
+        assertEquals("Test", ((CompoundField) f).getValue().get(0).get("authorName").getValue());
+    }
+
+    @Test
+    public void singleCompoundValueIsReadAsOneElementList() throws Exception {
+        String json = "{\"typeName\": \"author\", \"typeClass\": \"compound\", \"multiple\": false,"
+            + " \"value\": {\"authorName\": {\"typeName\": \"authorName\", \"typeClass\": \"primitive\", \"multiple\": false, \"value\": \"Test\"}}}";
+        CompoundField f = (CompoundField) mapper.readValue(json, MetadataField.class);
+        assertEquals(1, f.getValue().size());
+        assertEquals("Test", f.getValue().get(0).get("authorName").getValue());
+    }
+
+    @Test
+    public void multiValueSubfieldIsRejected() {
+        String json = "{\"typeName\": \"author\", \"typeClass\": \"compound\", \"multiple\": true,"
+            + " \"value\": [{\"authorName\": {\"typeName\": \"authorName\", \"typeClass\": \"primitive\", \"multiple\": true, \"value\": [\"Test\"]}}]}";
+        assertThrows(Exception.class, () -> mapper.readValue(json, MetadataField.class));
+    }
+
+    private void assertFieldIdenticalToFixture(Class<?> fieldClass) throws Exception {
+        File f = getTestJsonFileFor(fieldClass);
+        MetadataField field = mapper.readValue(f, MetadataField.class);
+        assertEquals(fieldClass, field.getClass());
+        assertEquals(mapper.readTree(f), mapper.valueToTree(field));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MultipartUploadEntityTest {
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        content = new byte[200_000];
+        new Random(1).nextBytes(content);
+        file = Files.createTempFile("upload", ".bin");
+        Files.write(file, content);
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private static byte[] write(MultipartUploadEntity entity) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void contentLengthMatchesWrittenBytes() throws Exception {
+        MultipartUploadEntity entity = new MultipartUploadEntity(FileUpload.fromFile(file), "{\"description\":\"test\"}");
+        byte[] body = write(entity);
+        assertEquals(entity.getContentLength(), body.length);
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isChunked());
+    }
+
+    @Test
+    public void bodyContainsJsonDataAndFileParts() throws Exception {
+        MultipartUploadEntity entity = new MultipartUploadEntity(FileUpload.fromFile(file), "{\"description\":\"test\"}");
+        String contentType = entity.getContentType().getValue();
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String body = new String(write(entity), StandardCharsets.ISO_8859_1);
+        assertTrue(body.startsWith("--" + boundary + "\r\nContent-Disposition: form-data; name=\"jsonData\""));
+        assertTrue(body.contains("name=\"file\"; filename=\"" + file.getFileName() + "\""));
+        assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+        int start = body.indexOf("\r\n\r\n", body.indexOf("name=\"file\"")) + 4;
+        assertTrue(Arrays.equals(content, body.substring(start, start + content.length).getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void checksumsAndProgressAreComputedWhileWriting() throws Exception {
+        FileUpload upload = FileUpload.fromFile(file);
+        upload.setChecksumAlgorithms(Arrays.asList("MD5", "SHA-1"));
+        List<Long> progress = new ArrayList<>();
+        upload.setProgressListener((sent, total) -> {
+            assertEquals(content.length, total);
+            progress.add(sent);
+        });
+        write(new MultipartUploadEntity(upload, null));
+        assertEquals(content.length, (long) progress.get(progress.size() - 1));
+        assertEquals(4, progress.size());
+        assertEquals(hex(MessageDigest.getInstance("MD5").digest(content)), upload.getChecksums().get("MD5"));
+        assertEquals(hex(MessageDigest.getInstance("SHA-1").digest(content)), upload.getChecksums().get("SHA-1"));
+    }
+
+    @Test
+    public void inputStreamUploadIsChunkedAndCanBeSentOnce() throws Exception {
+        MultipartUploadEntity entity = new MultipartUploadEntity(FileUpload.fromInputStream(new ByteArrayInputStream(content), "data.bin", -1), null);
+        assertTrue(entity.isChunked());
+        assertEquals(-1, entity.getContentLength());
+        assertFalse(entity.isRepeatable());
+        write(entity);
+        assertThrows(IllegalStateException.class, () -> write(entity));
+    }
+
+    @Test
+    public void unknownChecksumAlgorithmIsRejected() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> FileUpload.fromFile(file).setChecksumAlgorithms(Arrays.asList("NO-SUCH-ALGORITHM")));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestCoalescerTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final CountDownLatch joined = new CountDownLatch(2);
+    private final AtomicInteger coalesced = new AtomicInteger();
+    private final RequestCoalescer coalescer = new RequestCoalescer(new DataverseMetrics() {
+
+        @Override
+        public void requestCoalesced(String endpoint) {
+            coalesced.incrementAndGet();
+            joined.countDown();
+        }
+    });
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static <T> T await(CountDownLatch latch, T result) throws IOException {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            return result;
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShareOneRequest() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        Object response = new Object();
+        RequestCoalescer.Request<Object> request = () -> {
+            sent.incrementAndGet();
+            return await(joined, response);
+        };
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+        CompletableFuture<Object> follower1 = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+        CompletableFuture<Object> follower2 = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+
+        assertSame(response, leader.get());
+        assertSame(response, follower1.get());
+        assertSame(response, follower2.get());
+        assertEquals(1, sent.get());
+        assertEquals(2, coalesced.get());
+    }
+
+    @Test
+    public void failureIsSharedWithWaitingRequests() throws Exception {
+        RequestCoalescer.Request<Object> request = () -> {
+            await(joined, null);
+            throw new DataverseException(503, "Service unavailable", null);
+        };
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+        CompletableFuture<Object> follower1 = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+        CompletableFuture<Object> follower2 = CompletableFuture.supplyAsync(() -> call("key", request), executor);
+
+        Throwable failure = cause(leader);
+        assertTrue(failure instanceof DataverseException);
+        assertSame(failure, cause(follower1));
+        assertSame(failure, cause(follower2));
+    }
+
+    @Test
+    public void requestsAreNotSharedAfterCompletionOrBetweenKeys() throws Exception {
+        assertNotSame(coalescer.execute("key", "endpoint", Object::new), coalescer.execute("key", "endpoint", Object::new));
+        assertNotSame(coalescer.execute("key", "endpoint", Object::new), coalescer.execute("other", "endpoint", Object::new));
+        assertEquals(0, coalesced.get());
+    }
+
+    private Object call(String key, RequestCoalescer.Request<Object> request) {
+        try {
+            return coalescer.execute(key, "endpoint", request);
+        }
+        catch (IOException | DataverseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Throwable cause(CompletableFuture<Object> future) throws InterruptedException {
+        try {
+            future.get();
+            throw new AssertionError("Expected failure");
+        }
+        catch (ExecutionException e) {
+            return e.getCause().getCause();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestLimiterTest {
+
+    @Test
+    public void tokenBucketAllowsBurstUpToRateThenSpacesRequests() {
+        RequestLimiter.TokenBucket bucket = new RequestLimiter.TokenBucket(10);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++)
+            assertEquals(0, bucket.reserve(now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(now), TimeUnit.MICROSECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve(now), TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    @Test
+    public void tokenBucketRefillsOverTime() {
+        RequestLimiter.TokenBucket bucket = new RequestLimiter.TokenBucket(10);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++)
+            bucket.reserve(now);
+        assertEquals(0, bucket.reserve(now + TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void concurrencyLimitBlocksUntilPermitIsClosed() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(0, 1);
+        RequestLimiter.Permit first = limiter.acquire("api/dataverses/{id}");
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try (RequestLimiter.Permit ignored = limiter.acquire("api/dataverses/{id}")) {
+                acquired.countDown();
+            }
+            catch (Exception e) {
+                // test fails on timeout below
+            }
+        });
+        other.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        first.close();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        other.join();
+    }
+
+    @Test
+    public void endpointLimitAppliesToMatchingTemplatesOnly() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(0, 0);
+        limiter.setEndpointLimit("api/datasets/*/versions", 0, 1);
+        RequestLimiter.Permit versions = limiter.acquire("api/datasets/:persistentId/versions/{version}");
+
+        // Other endpoints are not affected
+        limiter.acquire("api/dataverses/{id}").close();
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            try (RequestLimiter.Permit ignored = limiter.acquire("api/datasets/{id}/versions")) {
+                acquired.set(true);
+            }
+            catch (Exception e) {
+                // test fails on assertion below
+            }
+        });
+        other.start();
+        other.join(100);
+        assertFalse(acquired.get());
+        versions.close();
+        other.join(5000);
+        assertTrue(acquired.get());
+    }
+
+    @Test
+    public void requestsWaitingForSaturatedEndpointDoNotBlockOtherEndpoints() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(0, 2);
+        limiter.setEndpointLimit("api/datasets/export", 0, 1);
+        RequestLimiter.Permit export = limiter.acquire("api/datasets/export");
+        Thread waiting = new Thread(() -> {
+            try (RequestLimiter.Permit ignored = limiter.acquire("api/datasets/export")) {
+                // released right away
+            }
+            catch (Exception e) {
+                // not relevant to this test
+            }
+        });
+        waiting.start();
+        waiting.join(100);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try (RequestLimiter.Permit ignored = limiter.acquire("api/dataverses/{id}")) {
+                acquired.countDown();
+            }
+            catch (Exception e) {
+                // test fails on timeout below
+            }
+        });
+        other.start();
+        try {
+            assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        }
+        finally {
+            export.close();
+            waiting.join(5000);
+            other.join(5000);
+        }
+    }
+}
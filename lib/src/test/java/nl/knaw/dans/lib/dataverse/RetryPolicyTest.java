@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse;
+
+import org.apache.http.client.utils.DateUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void postIsOnlyRetriedWhenEnabled() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.appliesTo("GET"));
+        assertTrue(policy.appliesTo("PUT"));
+        assertTrue(policy.appliesTo("DELETE"));
+        assertFalse(policy.appliesTo("POST"));
+        policy.setRetryPost(true);
+        assertTrue(policy.appliesTo("POST"));
+    }
+
+    @Test
+    public void noneDoesNotApplyToAnyMethod() {
+        assertFalse(RetryPolicy.none().appliesTo("GET"));
+    }
+
+    @Test
+    public void backoffStaysWithinCappedExponentialBound() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoff(Duration.ofMillis(100));
+        policy.setMaxBackoff(Duration.ofMillis(1000));
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(1);
+            assertTrue(first >= 0 && first <= 100);
+            long third = policy.backoffMillis(3);
+            assertTrue(third >= 0 && third <= 400);
+            long tenth = policy.backoffMillis(10);
+            assertTrue(tenth >= 0 && tenth <= 1000);
+        }
+    }
+
+    @Test
+    public void retryAfterInSecondsIsParsed() {
+        assertEquals(120_000, RetryPolicy.parseRetryAfter(" 120 ", 0));
+    }
+
+    @Test
+    public void retryAfterAsHttpDateIsParsed() {
+        long now = 1_600_000_000_000L;
+        assertEquals(30_000, RetryPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now + 30_000)), now));
+        assertEquals(0, RetryPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now - 30_000)), now));
+    }
+
+    @Test
+    public void missingOrInvalidRetryAfterYieldsMinusOne() {
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+    }
+
+    @Test
+    public void maxAttemptsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy().setMaxAttempts(0));
+    }
+}
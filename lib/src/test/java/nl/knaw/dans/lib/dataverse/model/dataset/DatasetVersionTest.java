@@ -15,9 +15,12 @@
  */
 package nl.knaw.dans.lib.dataverse.model.dataset;
 
+import nl.knaw.dans.lib.dataverse.model.file.DataFile;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 class DatasetVersionTest extends ModelDatasetMapperFixture {
@@ -39,6 +42,29 @@ class DatasetVersionTest extends ModelDatasetMapperFixture {
         assertEquals("Test", ((PrimitiveSingleValueField) title).getValue());
     }
 
+    @Test
+    public void canDeserializeWithFiles() throws Throwable {
+        DatasetVersion dsv = mapper.readValue(getTestJsonFileFor(classUnderTest, "with-files"), classUnderTest);
+        assertEquals(2, dsv.getFiles().size());
+        FileMeta tabular = dsv.getFiles().get(0);
+        assertEquals("survey.tab", tabular.getLabel());
+        assertEquals("data", tabular.getDirectoryLabel());
+        DataFile dataFile = tabular.getDataFile();
+        assertEquals("Tab-Delimited", dataFile.getFriendlyType());
+        assertEquals(31, dataFile.getFileMetadataId());
+        assertEquals("UNF:6:4MTSLUpGtwMQQ0I/LN4dlA==", dataFile.getUnf());
+        assertNull(dataFile.getEmbargo());
+        DataFile embargoed = dsv.getFiles().get(1).getDataFile();
+        assertEquals("2026-01-01", embargoed.getEmbargo().getDateAvailable());
+        assertEquals(184320L, embargoed.getFilesize());
+    }
+
+    @Test
+    public void roundTripWithFiles() throws Exception {
+        DatasetVersion dsv = roundTrip(getTestJsonFileFor(classUnderTest, "with-files"), DatasetVersion.class);
+        assertEquals("Adobe PDF", dsv.getFiles().get(1).getDataFile().getFriendlyType());
+    }
+
     @Test
     public void roundTrip() throws Exception {
         DatasetVersion f = roundTrip(getTestJsonFileFor(classUnderTest, "no-files"), DatasetVersion.class);
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2021 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.lib.dataverse.model.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileMetaTest extends ModelFileMapperFixture {
+    private static final Class<FileMeta> classUnderTest = FileMeta.class;
+
+    @Test
+    public void canDeserialize() throws Exception {
+        FileMeta fileMeta = mapper.readValue(getTestJsonFileFor(classUnderTest), classUnderTest);
+        assertEquals("survey.tab", fileMeta.getLabel());
+        assertEquals("data/raw", fileMeta.getDirectoryLabel());
+        assertEquals(Collections.singletonList("Data"), fileMeta.getCategories());
+        DataFile dataFile = fileMeta.getDataFile();
+        assertEquals(42, dataFile.getId());
+        assertEquals(123456L, dataFile.getFilesize());
+        assertEquals("UNF:6:4MTSLUpGtwMQQ0I/LN4dlA==", dataFile.getUnf());
+        assertEquals("MD5", dataFile.getChecksum().getType());
+        assertTrue(dataFile.isTabularData());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        FileMeta fileMeta = roundTrip(getTestJsonFileFor(classUnderTest), classUnderTest);
+        assertEquals("UNF:6:4MTSLUpGtwMQQ0I/LN4dlA==", fileMeta.getDataFile().getUnf());
+    }
+}